@@ -0,0 +1,141 @@
+package battleship;
+
+import battleship.util.FleetGenerator;
+import battleship.util.Histogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves per second of the bot, on the positions of recorded games, on one thread and on all the cores,
+ * and of the sampling bot with the default number of samples.
+ * The average number of shots the bot takes to sink a random fleet is printed at setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BotBenchmark {
+    private static final int GAMES = 1000;
+    private static final int SAMPLES = 2000;
+
+    /**
+     * What the bot knew before every move of the recorded games
+     */
+    private List<DensityMap> positions;
+    private Random random;
+    private MonteCarlo sampler;
+    private int next;
+
+    @Setup
+    public void setup() {
+        random = new Random(42);
+        // no time limit, every move takes SAMPLES samples
+        sampler = new MonteCarlo(Long.MAX_VALUE, SAMPLES, new Histogram());
+        positions = new ArrayList<>();
+        Game.Player player = new Fixtures.InMemoryGame().p1;
+
+        long shots = 0;
+        for (int i = 0; i < GAMES; i++) {
+            shots += playGame(new Board(player.setupGrid(FleetGenerator.nextGrid(random))));
+        }
+
+        System.out.println(String.format("%n[*] %.1f shots to win on average, %d games", (double) shots / GAMES, GAMES));
+    }
+
+    /**
+     * The bot shoots the fleet until it's sunk, the positions are recorded every few moves
+     *
+     * @return The number of shots
+     */
+    private int playGame(Board fleet) {
+        DensityMap map = new DensityMap();
+        List<Move> moves = new ArrayList<>();
+
+        while (!fleet.hasLost()) {
+            if (moves.size() % 10 == 0)
+                positions.add(replay(moves));
+            int cell = map.nextShot(random);
+            ShotResult result = fleet.shoot(cell);
+            Move move = new Move(cell, result);
+            move.apply(map);
+            moves.add(move);
+        }
+        return moves.size();
+    }
+
+    /**
+     * @return A new map that knows what the bot learned from the moves, the ships sunk included
+     */
+    private static DensityMap replay(List<Move> moves) {
+        DensityMap map = new DensityMap();
+        for (Move move : moves) {
+            move.apply(map);
+        }
+        return map;
+    }
+
+    @Benchmark
+    public int move() {
+        DensityMap position = positions.get(next++ % positions.size());
+        return position.nextShot(random);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int moveAllCores() {
+        return move();
+    }
+
+    @Benchmark
+    public int moveSampling() {
+        DensityMap position = positions.get(next++ % positions.size());
+        return sampler.nextShot(position, random);
+    }
+
+    /**
+     * A shot of the bot and what it learned from it
+     */
+    private static final class Move {
+        private final int cell;
+        private final Shot result;
+        /**
+         * Cells of the ship sunk, null if the shot didn't sink one
+         */
+        private final int[] sank;
+
+        Move(int cell, ShotResult result) {
+            this.cell = cell;
+            this.result = result.getStatus();
+            this.sank = this.result == Shot.SANK ? Bot.cells(result.getSankShip().getSankMessage()) : null;
+        }
+
+        void apply(DensityMap map) {
+            switch (result) {
+                case HIT:
+                    map.hit(cell);
+                    break;
+                case SANK:
+                    map.sank(sank);
+                    break;
+                default:
+                    map.miss(cell);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package battleship;
+
+import battleship.net.Connection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Grids, shots and in-memory games shared by the benchmarks
+ */
+final class Fixtures {
+    /**
+     * A valid grid with all the 7 ships
+     */
+    static final String GRID = "0101H05_0103H04_0105H03_0107H02_0109H02_0801H01_0803H01";
+    /**
+     * "SHOOT_XXYY" messages of all the cells, in a fixed random order
+     */
+    static final String[] SHOTS;
+
+    static {
+        List<String> shots = new ArrayList<>();
+        for (int x = 1; x <= Game.GRID_SIZE; x++) {
+            for (int y = 1; y <= Game.GRID_SIZE; y++) {
+                shots.add(String.format("SHOOT_%02d%02d", x, y));
+            }
+        }
+        Collections.shuffle(shots, new Random(42));
+        SHOTS = shots.toArray(new String[0]);
+    }
+
+    private Fixtures() {
+    }
+
+    /**
+     * A game with 2 players connected in memory, set-up the same way GamesManager does.
+     * p1 has the first turn.
+     */
+    static class InMemoryGame {
+        final Game game;
+        final Game.Player p1, p2;
+
+        InMemoryGame() {
+            this(new InMemoryConnection(), new InMemoryConnection());
+        }
+
+        InMemoryGame(Connection c1, Connection c2) {
+            this(new Game(), c1, c2);
+        }
+
+        InMemoryGame(Game game, Connection c1, Connection c2) {
+            this.game = game;
+            p1 = game.new Player(c1);
+            p2 = game.new Player(c2);
+            game.setup(p1, p2);
+
+            p1.start();
+            p2.start();
+        }
+
+        /**
+         * Both players send GRID, then the game starts
+         */
+        InMemoryGame sendGrids() {
+            p1.onMessage(GRID);
+            p2.onMessage(GRID);
+            return this;
+        }
+    }
+
+    /**
+     * Connection that only keeps the last message sent by the server
+     */
+    static class InMemoryConnection implements Connection {
+        String lastMessage;
+        long messages;
+        boolean isClosed;
+
+        @Override
+        public void println(String msg) throws IllegalArgumentException {
+            queue(msg);
+        }
+
+        @Override
+        public void queue(String msg) throws IllegalArgumentException {
+            lastMessage = msg;
+            messages++;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public boolean isClosed() {
+            return isClosed;
+        }
+
+        @Override
+        public void disconnect() {
+            isClosed = true;
+        }
+
+        @Override
+        public long getLastBeat() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public String getSocketInfo() {
+            return "in-memory";
+        }
+    }
+
+    /**
+     * @return All the messages sent by the players and by the server in a game, PING excluded
+     */
+    static List<String> recordGame() {
+        List<String> transcript = new ArrayList<>();
+        InMemoryConnection recorder = new InMemoryConnection() {
+            @Override
+            public void queue(String msg) {
+                transcript.add(msg);
+            }
+        };
+        InMemoryGame g = new InMemoryGame(recorder, recorder);
+
+        transcript.add(GRID);
+        transcript.add(GRID);
+        g.sendGrids();
+
+        int p1NextShot = 0, p2NextShot = 0;
+        while (!g.game.isOver()) {
+            String shot = g.game.currentPlayer == g.p1 ? SHOTS[p1NextShot++] : SHOTS[p2NextShot++];
+            transcript.add(shot);
+            g.game.currentPlayer.onMessage(shot);
+        }
+        return transcript;
+    }
+}
@@ -0,0 +1,35 @@
+package battleship;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full 2-player game driven through in-memory connections: grids, then every player shoots in a random order until one wins.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+    @Benchmark
+    public Game fullGame() {
+        Fixtures.InMemoryGame g = new Fixtures.InMemoryGame().sendGrids();
+        int p1NextShot = 0, p2NextShot = 0;
+
+        while (!g.game.isOver()) {
+            if (g.game.currentPlayer == g.p1)
+                g.p1.onMessage(Fixtures.SHOTS[p1NextShot++]);
+            else
+                g.p2.onMessage(Fixtures.SHOTS[p2NextShot++]);
+        }
+        return g.game;
+    }
+}
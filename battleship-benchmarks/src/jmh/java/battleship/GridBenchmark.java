@@ -0,0 +1,73 @@
+package battleship;
+
+import battleship.util.FleetGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grid validation done once per player after SEND_GRID, and the random fleets of the bots and the load generator
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+    private Game.Player player;
+    private String[] inputShips;
+    private Random random;
+    private int[] placements;
+
+    @Setup
+    public void setup() {
+        player = new Fixtures.InMemoryGame().p1;
+        inputShips = Fixtures.GRID.split("_");
+        random = new Random(42);
+        placements = new int[FleetGenerator.NUM_SHIPS];
+    }
+
+    @Benchmark
+    public boolean checkShipsFormat() {
+        return player.checkShipsFormat(inputShips);
+    }
+
+    @Benchmark
+    public List<Ship> parseGrid() {
+        return player.parseGrid(inputShips);
+    }
+
+    /**
+     * Whole validation of the message, as done by the game
+     */
+    @Benchmark
+    public List<Ship> setupGrid() {
+        return player.setupGrid(Fixtures.GRID);
+    }
+
+    @Benchmark
+    public int[] randomFleet() {
+        FleetGenerator.next(random, placements);
+        return placements;
+    }
+
+    /**
+     * Random fleet as a grid message
+     */
+    @Benchmark
+    public String randomGrid() {
+        return FleetGenerator.nextGrid(random);
+    }
+}
@@ -0,0 +1,60 @@
+package battleship;
+
+import battleship.util.LineReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading all the text messages of a full game, with a PING after each one, from an input stream:
+ * Scanner (used by PlayerSocket before) against LineReader.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineReaderBenchmark {
+    private byte[] wire;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (String msg : Fixtures.recordGame()) {
+            sb.append(msg).append('\n').append("PING\n");
+        }
+        wire = sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Benchmark
+    public void scanner(Blackhole bh) {
+        Scanner in = new Scanner(new ByteArrayInputStream(wire));
+        while (in.hasNextLine()) {
+            bh.consume(in.nextLine());
+        }
+    }
+
+    @Benchmark
+    public void lineReader(Blackhole bh) throws IOException {
+        LineReader in = new LineReader(new ByteArrayInputStream(wire));
+        String msg;
+        while ((msg = in.readLine()) != null) {
+            bh.consume(msg);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package battleship;
+
+import battleship.net.Connection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Players added to the QueueManager by one or many accept threads.
+ * Every invocation adds 2 players, so the score is in matches per second.
+ * Matched players aren't handed off to the games bootstrap stage, only the matchmaking is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchmakingBenchmark {
+    private GamesManager gamesManager;
+    private QueueManager queueManager;
+
+    @Setup
+    public void setup() {
+        gamesManager = new NoopGamesManager();
+        queueManager = new QueueManager(gamesManager);
+    }
+
+    @TearDown
+    public void tearDown() {
+        queueManager.shutdown();
+        gamesManager.shutdown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void matchSingleThread() throws IllegalAccessException {
+        queueManager.add(new Fixtures.InMemoryConnection());
+        queueManager.add(new Fixtures.InMemoryConnection());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void matchContended() throws IllegalAccessException {
+        queueManager.add(new Fixtures.InMemoryConnection());
+        queueManager.add(new Fixtures.InMemoryConnection());
+    }
+
+    /**
+     * Drops the matched players instead of queueing them to the bootstrap stage
+     */
+    private static class NoopGamesManager extends GamesManager {
+        @Override
+        public void start(Connection socketP1, Connection socketP2) {
+        }
+    }
+}
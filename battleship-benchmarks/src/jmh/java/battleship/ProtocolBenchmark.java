@@ -0,0 +1,91 @@
+package battleship;
+
+import battleship.util.BinaryProtocol;
+import battleship.util.LineReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of all the messages of a full game, with the text and the binary protocol.
+ * The bytes on the wire of the game are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBenchmark {
+    @Param({"text", "binary"})
+    public String protocol;
+
+    private String[] messages;
+    /**
+     * All the messages encoded one after the other
+     */
+    private ByteBuffer wire;
+
+    @Setup
+    public void setup() {
+        messages = Fixtures.recordGame().toArray(new String[0]);
+        wire = ByteBuffer.allocate(messages.length * 64);
+        encodeAll(wire);
+        wire.flip();
+
+        System.out.println(String.format("%n[*] %s protocol: %d messages, %d bytes per game", protocol, messages.length, wire.remaining()));
+    }
+
+    @Benchmark
+    public ByteBuffer encodeGame() {
+        ByteBuffer out = ByteBuffer.allocate(wire.capacity());
+        encodeAll(out);
+        return out;
+    }
+
+    @Benchmark
+    public void decodeGame(Blackhole bh) {
+        ByteBuffer in = wire.duplicate();
+
+        if (protocol.equals("binary")) {
+            String msg;
+            while ((msg = BinaryProtocol.decode(in)) != null) {
+                bh.consume(msg);
+            }
+        } else {
+            // same line splitting as NioClient
+            int start = 0;
+            for (int i = 0; i < in.limit(); i++) {
+                if (in.get(i) == '\n') {
+                    bh.consume(LineReader.toMessage(in.array(), start, i));
+                    start = i + 1;
+                }
+            }
+        }
+    }
+
+    private void encodeAll(ByteBuffer out) {
+        for (String msg : messages) {
+            if (protocol.equals("binary")) {
+                BinaryProtocol.encode(msg, out);
+            } else {
+                for (int i = 0; i < msg.length(); i++) {
+                    out.put((byte) msg.charAt(i));
+                }
+                out.put((byte) '\n');
+            }
+        }
+    }
+}
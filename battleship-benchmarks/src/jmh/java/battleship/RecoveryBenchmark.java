@@ -0,0 +1,97 @@
+package battleship;
+
+import battleship.journal.Journal;
+import battleship.journal.RecoveredGame;
+import battleship.journal.Recovery;
+import battleship.metrics.Metrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time to restart with openGames games in progress: reading the journal from the last checkpoint
+ * and rebuilding the games, as the server does before accepting connections.
+ * Half of the shots of every game are in its snapshot, the other half in the journal tail.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RecoveryBenchmark {
+    private static final int SHOTS_PER_PLAYER = 20;
+    private static final long SNAPSHOT_INTERVAL = 500;
+
+    @Param({"10000"})
+    public int openGames;
+
+    private Path dir;
+
+    @Setup
+    public void setup() throws IOException, InterruptedException {
+        dir = Files.createTempDirectory("journal");
+        Metrics metrics = new Metrics();
+        Journal journal = new Journal(dir, 64 * 1024 * 1024, SNAPSHOT_INTERVAL, metrics);
+
+        Fixtures.InMemoryGame[] games = new Fixtures.InMemoryGame[openGames];
+        for (int i = 0; i < openGames; i++) {
+            games[i] = new Fixtures.InMemoryGame(new Game(metrics, journal),
+                    new Fixtures.InMemoryConnection(), new Fixtures.InMemoryConnection()).sendGrids();
+            shoot(games[i], 0, SHOTS_PER_PLAYER / 2);
+        }
+
+        // let a checkpoint complete, then write the tail
+        Thread.sleep(3 * SNAPSHOT_INTERVAL);
+        for (Fixtures.InMemoryGame g : games) {
+            shoot(g, SHOTS_PER_PLAYER / 2, SHOTS_PER_PLAYER);
+        }
+        journal.close();
+
+        if (metrics.counter("journal.dropped").sum() > 0)
+            throw new IllegalStateException("Records were dropped while writing the journal");
+    }
+
+    /**
+     * Both players shoot the shots from..to of Fixtures.SHOTS, the game doesn't end since they're less than the fleet cells
+     */
+    private static void shoot(Fixtures.InMemoryGame g, int from, int to) {
+        for (int i = from; i < to; i++) {
+            g.p1.onMessage(Fixtures.SHOTS[i]);
+            g.p2.onMessage(Fixtures.SHOTS[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public int recover() throws IOException {
+        Collection<RecoveredGame> states = Recovery.read(dir);
+        for (RecoveredGame state : states) {
+            Game.recover(Metrics.DETACHED, Journal.DISABLED, null, state);
+        }
+        return states.size();
+    }
+}
@@ -0,0 +1,109 @@
+package battleship;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shot resolution: Ship.hit, Board.shoot and a whole turn handled by Game.Player.
+ * <p>
+ * All the benchmarks apart from playerShoot are in steady state, so the gc profiler should report no allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShotBenchmark {
+    private static final int OCEAN_CELL = Board.cell(10, 10);
+    private static final int SHIP_CELL = Board.cell(1, 1);
+
+    private Ship ship;
+    private Board board;
+    /**
+     * Game where p1 always has the turn and already shot SHOOT_1010
+     */
+    private Fixtures.InMemoryGame duplicateGame;
+    private Fixtures.InMemoryGame game;
+    private int p1NextShot, p2NextShot;
+
+    @Setup
+    public void setup() {
+        ship = new Ship(Arrays.asList("0101", "0102", "0103"));
+        ship.hit(SHIP_CELL);
+
+        board = new Board(new Fixtures.InMemoryGame().p1.parseGrid(Fixtures.GRID.split("_")));
+        board.shoot(SHIP_CELL);
+
+        duplicateGame = new Fixtures.InMemoryGame().sendGrids();
+        duplicateGame.p1.onMessage("SHOOT_1010");
+        duplicateGame.p2.onMessage("SHOOT_1010");
+
+        newGame();
+    }
+
+    private void newGame() {
+        game = new Fixtures.InMemoryGame().sendGrids();
+        p1NextShot = 0;
+        p2NextShot = 0;
+    }
+
+    @Benchmark
+    public Shot shipHitOcean() {
+        return ship.hit(OCEAN_CELL);
+    }
+
+    @Benchmark
+    public Shot shipHitDuplicate() {
+        return ship.hit(SHIP_CELL);
+    }
+
+    @Benchmark
+    public ShotResult boardShootOcean() {
+        return board.shoot(OCEAN_CELL);
+    }
+
+    @Benchmark
+    public ShotResult boardShootDuplicate() {
+        return board.shoot(SHIP_CELL);
+    }
+
+    @Benchmark
+    public int parseShot() {
+        return Protocol.parseShot("SHOOT_0710");
+    }
+
+    /**
+     * A cell already shot: parsing, duplicate check and DUPLICATE response
+     */
+    @Benchmark
+    public void playerShootDuplicate() {
+        duplicateGame.p1.onMessage("SHOOT_1010");
+    }
+
+    /**
+     * Every player shoots all the cells in a random order until the game ends, then a new game is created.
+     * The cost of creating the game is amortized over all its shots.
+     */
+    @Benchmark
+    public void playerShoot() {
+        if (game.game.currentPlayer == game.p1)
+            game.p1.onMessage(Fixtures.SHOTS[p1NextShot++]);
+        else
+            game.p2.onMessage(Fixtures.SHOTS[p2NextShot++]);
+
+        if (game.game.isOver())
+            newGame();
+    }
+}
@@ -0,0 +1,95 @@
+package battleship;
+
+import battleship.heartbeat.HeartbeatClient;
+import battleship.util.PlayerSocket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shot round-trip over loopback sockets through HeartbeatClient and a thread-per-player game.
+ * <p>
+ * A cell already shot is sent every time, so the game never advances and the DUPLICATE answer
+ * measures only the message delivery to the Player thread and back. SampleTime reports the p99.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShotRoundTripBenchmark {
+    /**
+     * Run players and input readers on virtual threads, if supported by the JVM
+     */
+    @Param({"false", "true"})
+    public boolean virtual;
+
+    private ExecutorService threads;
+    private ServerSocket listener;
+    private PlayerSocket shooter, target;
+
+    @Setup
+    public void setup() throws IOException {
+        threads = Threads.newPerTaskExecutor(virtual);
+        listener = new ServerSocket(0);
+
+        Socket shooterSocket = new Socket("127.0.0.1", listener.getLocalPort());
+        HeartbeatClient shooterClient = new HeartbeatClient(listener.accept(), 0, threads);
+        Socket targetSocket = new Socket("127.0.0.1", listener.getLocalPort());
+        HeartbeatClient targetClient = new HeartbeatClient(listener.accept(), 0, threads);
+
+        shooter = new PlayerSocket(shooterSocket);
+        target = new PlayerSocket(targetSocket);
+        new GamesManager(threads).create(shooterClient, targetClient);
+
+        waitFor(shooter, "SEND_GRID");
+        shooter.println(Fixtures.GRID);
+        waitFor(target, "SEND_GRID");
+        target.println(Fixtures.GRID);
+
+        // one turn each, so that the shooter has the turn and SHOOT_1010 is a duplicate
+        waitFor(shooter, "TURN_START");
+        shooter.println("SHOOT_1010");
+        waitFor(shooter, "TURN_END");
+        waitFor(target, "TURN_START");
+        target.println("SHOOT_1010");
+        waitFor(target, "TURN_END");
+        waitFor(shooter, "TURN_START");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        shooter.getSocket().close();
+        target.getSocket().close();
+        listener.close();
+        threads.shutdownNow();
+    }
+
+    @Benchmark
+    public String duplicateShot() throws IOException {
+        shooter.println("SHOOT_1010");
+        return shooter.nextMessage();
+    }
+
+    private static void waitFor(PlayerSocket socket, String msg) throws IOException {
+        while (!msg.equals(socket.nextMessage())) {
+            // skip the other messages
+        }
+    }
+}
@@ -208,110 +208,115 @@ public class GameMenuController implements Initializable {
     }
 
     public void play(final PlayerSocket gsSocket) {
-        while (gsSocket.getIn().hasNextLine()) {
-            String msg = gsSocket.getIn().nextLine();
-
-            if (msg.equals("WIN_OPPONENT_DC")) {
-                Platform.runLater(() -> {
-                    infoLabel.setText("Opponent disconnected. You Won!");
-                    endDialog.setVisible(true);
-                });
-            } else if (!this.ourTurn) {
-                if (msg.equals("TURN_START")) {
-                    ourTurn = true;
-                    Platform.runLater(() -> {
-                        this.turnBulb.setImage(new Image("img/bulb_red_on.png"));
-                    });
-                } else if (msg.startsWith("HIT_")) {
-                    Platform.runLater(() -> {
-                        ImageView iv = new ImageView("img/hit.png");
-                        iv.setFitWidth(25);
-                        iv.setFitHeight(25);
-                        this.trackingGrid.add(iv, Integer.parseInt(msg.substring(6, 8)) - 1, Integer.parseInt(msg.substring(4, 6)) - 1);
-                    });
-                } else if (msg.startsWith("OCEAN_")) {
+        try {
+            String line;
+            while ((line = gsSocket.nextMessage()) != null) {
+                String msg = line;
+
+                if (msg.equals("WIN_OPPONENT_DC")) {
                     Platform.runLater(() -> {
-                        ImageView iv = new ImageView("img/ocean.png");
-                        iv.setFitWidth(25);
-                        iv.setFitHeight(25);
-                        this.trackingGrid.add(iv, Integer.parseInt(msg.substring(8, 10)) - 1, Integer.parseInt(msg.substring(6, 8)) - 1);
+                        infoLabel.setText("Opponent disconnected. You Won!");
+                        endDialog.setVisible(true);
                     });
-                } else if (msg.startsWith("SANK_")) {
-                    Platform.runLater(() -> {
-                        for (String shipCell : msg.substring(5).split("_")) {
-                            int columnIndex = Integer.parseInt(shipCell.substring(2, 4)) - 1;
-                            int rowIndex = Integer.parseInt(shipCell.substring(0, 2)) - 1;
-                            Pane p = new Pane();
-                            p.setPrefSize(25, 25);
-                            p.setMaxSize(25, 25);
-                            this.trackingGrid.add(p, columnIndex, rowIndex);
-                            ImageView iv = new ImageView("img/sank.png");
+                } else if (!this.ourTurn) {
+                    if (msg.equals("TURN_START")) {
+                        ourTurn = true;
+                        Platform.runLater(() -> {
+                            this.turnBulb.setImage(new Image("img/bulb_red_on.png"));
+                        });
+                    } else if (msg.startsWith("HIT_")) {
+                        Platform.runLater(() -> {
+                            ImageView iv = new ImageView("img/hit.png");
                             iv.setFitWidth(25);
                             iv.setFitHeight(25);
-                            this.trackingGrid.add(iv, columnIndex, rowIndex);
-                        }
-                    });
-                } else if (msg.startsWith("LOST")) {
-                    Platform.runLater(() -> {
-                        // Show remained ships
-                        for (String cell : msg.substring(5).split("_")) {
-                            int columnIndex = Integer.parseInt(cell.substring(2)) - 1,
-                                    rowIndex = Integer.parseInt(cell.substring(0, 2)) - 1;
-                            this.targetGrid.getChildren().get(columnIndex * 10 + rowIndex).getStyleClass().add("ship");
-                        }
-
-                        infoLabel.setText("You Lost!");
-                        endDialog.setVisible(true);
-                    });
-                }
-            } else {
-                if (msg.equals("TURN_END")) {
-                    ourTurn = false;
-                    Platform.runLater(() -> {
-                        this.turnBulb.setImage(new Image("img/bulb_red_off.png"));
-                    });
-                } else if (msg.equals("HIT")) {
-                    Platform.runLater(() -> {
-                        ImageView iv = new ImageView("img/hit.png");
-                        iv.setFitWidth(30);
-                        iv.setFitHeight(30);
-                        this.targetGrid.add(iv, lastShoot.colIndex, lastShoot.rowIndex);
-                    });
-                } else if (msg.equals("OCEAN")) {
-                    Platform.runLater(() -> {
-                        ImageView iv = new ImageView("img/ocean.png");
-                        iv.setFitWidth(30);
-                        iv.setFitHeight(30);
-                        this.targetGrid.add(iv, lastShoot.colIndex, lastShoot.rowIndex);
-                    });
-                } else if (msg.startsWith("SANK_")) {
-                    Platform.runLater(() -> {
-                        String[] shipCells = msg.substring(5).split("_");
-
-                        for (String shipCell : shipCells) {
-                            int columnIndex = Integer.parseInt(shipCell.substring(2, 4)) - 1;
-                            int rowIndex = Integer.parseInt(shipCell.substring(0, 2)) - 1;
-                            Pane p = new Pane();
-                            p.setPrefSize(30, 30);
-                            p.setMaxSize(30, 30);
-                            this.targetGrid.add(p, columnIndex, rowIndex);
-                            ImageView iv = new ImageView("img/sank.png");
+                            this.trackingGrid.add(iv, Integer.parseInt(msg.substring(6, 8)) - 1, Integer.parseInt(msg.substring(4, 6)) - 1);
+                        });
+                    } else if (msg.startsWith("OCEAN_")) {
+                        Platform.runLater(() -> {
+                            ImageView iv = new ImageView("img/ocean.png");
+                            iv.setFitWidth(25);
+                            iv.setFitHeight(25);
+                            this.trackingGrid.add(iv, Integer.parseInt(msg.substring(8, 10)) - 1, Integer.parseInt(msg.substring(6, 8)) - 1);
+                        });
+                    } else if (msg.startsWith("SANK_")) {
+                        Platform.runLater(() -> {
+                            for (String shipCell : msg.substring(5).split("_")) {
+                                int columnIndex = Integer.parseInt(shipCell.substring(2, 4)) - 1;
+                                int rowIndex = Integer.parseInt(shipCell.substring(0, 2)) - 1;
+                                Pane p = new Pane();
+                                p.setPrefSize(25, 25);
+                                p.setMaxSize(25, 25);
+                                this.trackingGrid.add(p, columnIndex, rowIndex);
+                                ImageView iv = new ImageView("img/sank.png");
+                                iv.setFitWidth(25);
+                                iv.setFitHeight(25);
+                                this.trackingGrid.add(iv, columnIndex, rowIndex);
+                            }
+                        });
+                    } else if (msg.startsWith("LOST")) {
+                        Platform.runLater(() -> {
+                            // Show remained ships
+                            for (String cell : msg.substring(5).split("_")) {
+                                int columnIndex = Integer.parseInt(cell.substring(2)) - 1,
+                                        rowIndex = Integer.parseInt(cell.substring(0, 2)) - 1;
+                                this.targetGrid.getChildren().get(columnIndex * 10 + rowIndex).getStyleClass().add("ship");
+                            }
+
+                            infoLabel.setText("You Lost!");
+                            endDialog.setVisible(true);
+                        });
+                    }
+                } else {
+                    if (msg.equals("TURN_END")) {
+                        ourTurn = false;
+                        Platform.runLater(() -> {
+                            this.turnBulb.setImage(new Image("img/bulb_red_off.png"));
+                        });
+                    } else if (msg.equals("HIT")) {
+                        Platform.runLater(() -> {
+                            ImageView iv = new ImageView("img/hit.png");
                             iv.setFitWidth(30);
                             iv.setFitHeight(30);
-                            this.targetGrid.add(iv, columnIndex, rowIndex);
-                        }
-
-                        // Update remained ships count
-                        availableShipsLengths[shipCells.length - 1]--;
-                        updateRemainedShips();
-                    });
-                } else if (msg.startsWith("WIN")) {
-                    Platform.runLater(() -> {
-                        infoLabel.setText("You Won!");
-                        endDialog.setVisible(true);
-                    });
+                            this.targetGrid.add(iv, lastShoot.colIndex, lastShoot.rowIndex);
+                        });
+                    } else if (msg.equals("OCEAN")) {
+                        Platform.runLater(() -> {
+                            ImageView iv = new ImageView("img/ocean.png");
+                            iv.setFitWidth(30);
+                            iv.setFitHeight(30);
+                            this.targetGrid.add(iv, lastShoot.colIndex, lastShoot.rowIndex);
+                        });
+                    } else if (msg.startsWith("SANK_")) {
+                        Platform.runLater(() -> {
+                            String[] shipCells = msg.substring(5).split("_");
+
+                            for (String shipCell : shipCells) {
+                                int columnIndex = Integer.parseInt(shipCell.substring(2, 4)) - 1;
+                                int rowIndex = Integer.parseInt(shipCell.substring(0, 2)) - 1;
+                                Pane p = new Pane();
+                                p.setPrefSize(30, 30);
+                                p.setMaxSize(30, 30);
+                                this.targetGrid.add(p, columnIndex, rowIndex);
+                                ImageView iv = new ImageView("img/sank.png");
+                                iv.setFitWidth(30);
+                                iv.setFitHeight(30);
+                                this.targetGrid.add(iv, columnIndex, rowIndex);
+                            }
+
+                            // Update remained ships count
+                            availableShipsLengths[shipCells.length - 1]--;
+                            updateRemainedShips();
+                        });
+                    } else if (msg.startsWith("WIN")) {
+                        Platform.runLater(() -> {
+                            infoLabel.setText("You Won!");
+                            endDialog.setVisible(true);
+                        });
+                    }
                 }
             }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
@@ -125,12 +125,12 @@ public class MainMenuController implements Initializable {
      */
     private boolean waitGridRequest(final PlayerSocket gsSocket) {
         try {
-            while (gsSocket.getIn().hasNextLine()) {
-                String msg = gsSocket.getIn().nextLine();
+            String msg;
+            while ((msg = gsSocket.nextMessage()) != null) {
                 if (msg.equals("SEND_GRID"))
                     return true;
             }
-        } catch (IllegalStateException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
         return false;
@@ -1,5 +1,6 @@
 package battleship.controllers;
 
+import battleship.util.FleetGenerator;
 import battleship.util.PlayerSocket;
 import javafx.application.Platform;
 import javafx.collections.ObservableList;
@@ -29,6 +30,7 @@ import java.util.Objects;
 import java.util.ResourceBundle;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class ShipPlacementMenuController implements Initializable {
     @FXML
@@ -38,6 +40,8 @@ public class ShipPlacementMenuController implements Initializable {
     public Button confirmGrid;
     @FXML
     public Button clearGrid;
+    @FXML
+    public Button randomGrid;
 
     @FXML
     public ToggleGroup ships;
@@ -139,64 +143,25 @@ public class ShipPlacementMenuController implements Initializable {
                 int cell = trackingGrid.getChildren().indexOf(n),
                         shipLength = Integer.parseInt(((RadioButton) selectedRadioShipLength).getText());
 
-                if (!isShipAvailable(shipLength))
-                    return;
-
                 String newShipInfo = String.format("%02d%02d%s%02d",
                         (int) Math.ceil(cell / 10.0), // xx
                         ((cell - 1) % 10) + 1, // yy
                         this.shipOrientation, // Orientation
                         shipLength // Length
                 );
-
-                if (checkAndUpdateGrid(newShipInfo)) {
-                    System.out.println(newShipInfo);
-                    shipsCells.add(newShipInfo);
-
-                    // updates remained ships
-                    availableShipsLengths[shipLength - 1] -= 1;
-                    updateRemainedShipsAndRadioButtons();
-                    if (isGridSubmittable()) {
-                        confirmGrid.setDisable(false);
-                    }
-
-                    // Color cells
-                    ObservableList<Node> cells = trackingGrid.getChildren();
-                    int selectedCell = cells.indexOf(n);
-                    int orientation = (this.shipOrientation == 'H') ? 10 : 1; // 10='H', 1='V'
-                    Node tmpCell;
-
-                    // color ship in the grid
-                    for (int i = 0; i < shipLength; i++) {
-                        tmpCell = cells.get(selectedCell + i * orientation);
-                        tmpCell.setStyle(null);
-                        tmpCell.getStyleClass().add("ship");
-                    }
-                }
+                placeShip(newShipInfo);
             });
         }
 
         toggleOrientation.setOnMouseClicked(mouseEvent -> this.shipOrientation = (shipOrientation == 'H') ? 'V' : 'H');
 
-        clearGrid.setOnMouseClicked(mouseEvent -> {
-            // disable grid submit
-            confirmGrid.setDisable(true);
-
-            // remove 'ship' style class from nodes
-            trackingGrid.getChildren().forEach(node -> node.getStyleClass().remove("ship"));
-
-            // reset available ships
-            availableShipsLengths = shipsLengths.clone();
-            updateRemainedShipsAndRadioButtons();
-
-            // remove set ships
-            shipsCells.clear();
+        clearGrid.setOnMouseClicked(mouseEvent -> clear());
 
-            // reset placeable grid
-            for (int i = 0; i < GRID_SIZE; i++) {
-                for (int j = 0; j < GRID_SIZE; j++) {
-                    placeableGrid[i][j] = false;
-                }
+        // replaces the ships placed with a random fleet
+        randomGrid.setOnMouseClicked(mouseEvent -> {
+            clear();
+            for (String ship : FleetGenerator.nextGrid(ThreadLocalRandom.current()).split("_")) {
+                placeShip(ship);
             }
         });
 
@@ -204,6 +169,7 @@ public class ShipPlacementMenuController implements Initializable {
             // disable double click
             confirmGrid.setDisable(true);
             clearGrid.setDisable(true);
+            randomGrid.setDisable(true);
             toggleOrientation.setDisable(true);
 
             // Send grid
@@ -212,8 +178,17 @@ public class ShipPlacementMenuController implements Initializable {
             gsSocket.getOut().println(grid);
 
             // Server response
-            String response = gsSocket.getIn().nextLine();
-            if (response.equals("GRID_OK")) {
+            String response;
+            try {
+                response = gsSocket.nextMessage();
+            } catch (IOException e) {
+                e.printStackTrace();
+                response = null;
+            }
+
+            if (response == null) {
+                throw new IllegalStateException("Connection to the server lost");
+            } else if (response.equals("GRID_OK")) {
                 waitOpponent.setVisible(true);
 
                 CompletableFuture
@@ -223,6 +198,7 @@ public class ShipPlacementMenuController implements Initializable {
                 opponentDisconnected.setVisible(true);
             } else {
                 clearGrid.setDisable(false);
+                randomGrid.setDisable(false);
                 toggleOrientation.setDisable(false);
                 throw new IllegalStateException("Server returned GRID_ERR of a supposedly valid grid");
             }
@@ -294,6 +270,66 @@ public class ShipPlacementMenuController implements Initializable {
         }
     }
 
+    /**
+     * Places a ship on the grid, if it's still available and doesn't touch the ships placed
+     *
+     * @param newShipInfo The ship in the "XXYYHLL" format of the grid message
+     */
+    private void placeShip(String newShipInfo) {
+        int shipLength = Integer.parseInt(newShipInfo.substring(5, 7));
+        if (!isShipAvailable(shipLength))
+            return;
+
+        if (checkAndUpdateGrid(newShipInfo)) {
+            shipsCells.add(newShipInfo);
+
+            // updates remained ships
+            availableShipsLengths[shipLength - 1] -= 1;
+            updateRemainedShipsAndRadioButtons();
+            if (isGridSubmittable()) {
+                confirmGrid.setDisable(false);
+            }
+
+            // Color cells, the grid lines are the first child
+            ObservableList<Node> cells = trackingGrid.getChildren();
+            int selectedCell = (Integer.parseInt(newShipInfo.substring(0, 2)) - 1) * 10 + Integer.parseInt(newShipInfo.substring(2, 4));
+            int orientation = (newShipInfo.charAt(4) == 'H') ? 10 : 1; // 10='H', 1='V'
+            Node tmpCell;
+
+            // color ship in the grid
+            for (int i = 0; i < shipLength; i++) {
+                tmpCell = cells.get(selectedCell + i * orientation);
+                tmpCell.setStyle(null);
+                tmpCell.getStyleClass().add("ship");
+            }
+        }
+    }
+
+    /**
+     * Removes all the ships placed
+     */
+    private void clear() {
+        // disable grid submit
+        confirmGrid.setDisable(true);
+
+        // remove 'ship' style class from nodes
+        trackingGrid.getChildren().forEach(node -> node.getStyleClass().remove("ship"));
+
+        // reset available ships
+        availableShipsLengths = shipsLengths.clone();
+        updateRemainedShipsAndRadioButtons();
+
+        // remove set ships
+        shipsCells.clear();
+
+        // reset placeable grid
+        for (int i = 0; i < GRID_SIZE; i++) {
+            for (int j = 0; j < GRID_SIZE; j++) {
+                placeableGrid[i][j] = false;
+            }
+        }
+    }
+
     private boolean isGridSubmittable() {
         for (int remained :
                 availableShipsLengths) {
@@ -511,10 +547,14 @@ public class ShipPlacementMenuController implements Initializable {
      * @param gsSocket the game server socket
      */
     private void waitGameStart(final PlayerSocket gsSocket) {
-        while (gsSocket.getIn().hasNextLine()) {
-            String msg = gsSocket.getIn().nextLine();
-            if (msg.equals("GAME_START"))
-                return;
+        try {
+            String msg;
+            while ((msg = gsSocket.nextMessage()) != null) {
+                if (msg.equals("GAME_START"))
+                    return;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 }
@@ -0,0 +1,142 @@
+package battleship.loadgen;
+
+import battleship.util.FleetGenerator;
+import battleship.util.PlayerSocket;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless player that plays games in a loop until the deadline: sends a random grid and shoots random cells.
+ */
+class Bot implements Runnable {
+    private static final long HEARTBEAT_PERIOD = 1200;
+
+    private final String host;
+    private final int port;
+    private final boolean binary;
+    private final long deadline;
+    private final ScheduledExecutorService heartbeats;
+    private final Stats stats;
+    private final Random random;
+
+    /**
+     * @param binary     Use the binary protocol
+     * @param deadline   currentTimeMillis after which no new game is started
+     * @param heartbeats Executor that sends the PING of all the bots
+     */
+    Bot(String host, int port, boolean binary, long deadline, ScheduledExecutorService heartbeats, Stats stats, long seed) {
+        this.host = host;
+        this.port = port;
+        this.binary = binary;
+        this.deadline = deadline;
+        this.heartbeats = heartbeats;
+        this.stats = stats;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public void run() {
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                play();
+            } catch (IOException | NoSuchElementException | IllegalStateException e) {
+                stats.errors.increment();
+            }
+        }
+    }
+
+    /**
+     * Plays one game on a new connection
+     */
+    private void play() throws IOException {
+        long connectTime = System.nanoTime();
+        long gridTime = 0, shotTime = 0;
+        boolean isWaitingShotResult = false, isMatched = false;
+        List<String> shots = randomShots();
+
+        try (Socket socket = new Socket(host, port)) {
+            // the other bots may have stopped: stop waiting for an opponent at the deadline
+            socket.setSoTimeout((int) Math.max(1, deadline - System.currentTimeMillis()));
+            PlayerSocket gsSocket = new PlayerSocket(socket, binary);
+            stats.connected.incrementAndGet();
+
+            // Same cadence as the GUI client
+            ScheduledFuture<?> heartbeat = heartbeats.scheduleAtFixedRate(() -> gsSocket.println("PING"), 0, HEARTBEAT_PERIOD, TimeUnit.MILLISECONDS);
+
+            try {
+                String msg;
+                while ((msg = gsSocket.nextMessage()) != null) {
+
+                    if (msg.equals("OPPONENT_FOUND")) {
+                        stats.connectToMatch.record(microsSince(connectTime));
+                        isMatched = true;
+                        socket.setSoTimeout(0);
+                    } else if (msg.equals("SEND_GRID")) {
+                        gridTime = System.nanoTime();
+                        gsSocket.println(FleetGenerator.nextGrid(random));
+                    } else if (msg.equals("GRID_OK")) {
+                        stats.gridAck.record(microsSince(gridTime));
+                    } else if (msg.equals("GRID_ERR")) {
+                        stats.errors.increment();
+                    } else if (msg.equals("TURN_START") || (isWaitingShotResult && (msg.equals("DUPLICATE") || msg.equals("INVALID")))) {
+                        shotTime = System.nanoTime();
+                        isWaitingShotResult = true;
+                        gsSocket.println("SHOOT_" + shots.remove(shots.size() - 1));
+                    } else if (isWaitingShotResult && (msg.equals("HIT") || msg.equals("OCEAN") || msg.startsWith("SANK_"))) {
+                        stats.shot.record(microsSince(shotTime));
+                        isWaitingShotResult = false;
+                    } else if (msg.equals("SERVER_FULL")) {
+                        stats.serverFull.increment();
+                        return;
+                    } else if (msg.equals("WIN_OPPONENT_DC")) {
+                        stats.opponentDisconnected.increment();
+                        return;
+                    } else if (msg.equals("WIN")) {
+                        stats.gamesWon.increment();
+                        return;
+                    } else if (msg.startsWith("LOST")) {
+                        stats.gamesLost.increment();
+                        return;
+                    }
+                }
+                // connection closed by the server, or no opponent before the deadline
+                if (isMatched || System.currentTimeMillis() < deadline)
+                    stats.errors.increment();
+            } catch (SocketTimeoutException e) {
+                if (isMatched)
+                    throw e;
+            } finally {
+                heartbeat.cancel(false);
+                stats.connected.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return All the "XXYY" cells in a random order
+     */
+    private List<String> randomShots() {
+        List<String> shots = new ArrayList<>();
+        for (int x = 1; x <= 10; x++) {
+            for (int y = 1; y <= 10; y++) {
+                shots.add(String.format("%02d%02d", x, y));
+            }
+        }
+        Collections.shuffle(shots, random);
+        return shots;
+    }
+
+    private static long microsSince(long nanoTime) {
+        return (System.nanoTime() - nanoTime) / 1000;
+    }
+}
@@ -0,0 +1,47 @@
+package battleship.loadgen;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless load client. Opens N connections to a server, every one plays games until the duration runs out.
+ * <p>
+ * Usage: LoadGenerator [host] [port] [connections] [durationSeconds] [text|binary]
+ * (default: localhost 12345 100 60 text)
+ */
+public class LoadGenerator {
+    private static final int REPORT_PERIOD = 10; // seconds
+
+    public static void main(String[] args) throws InterruptedException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 12345;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int duration = args.length > 3 ? Integer.parseInt(args[3]) : 60;
+        boolean binary = args.length > 4 && args[4].equals("binary");
+
+        Stats stats = new Stats();
+        long start = System.currentTimeMillis();
+        long deadline = start + duration * 1000L;
+
+        // Every bot blocks on its own socket, heartbeats and reports are shared
+        ExecutorService bots = Executors.newFixedThreadPool(connections);
+        ScheduledExecutorService heartbeats = Executors.newScheduledThreadPool(2);
+        heartbeats.scheduleAtFixedRate(() -> stats.print(System.currentTimeMillis() - start), REPORT_PERIOD, REPORT_PERIOD, TimeUnit.SECONDS);
+
+        System.out.println(String.format("[*] %d %s connections to %s:%d for %ds", connections, binary ? "binary" : "text", host, port, duration));
+        for (int i = 0; i < connections; i++) {
+            bots.execute(new Bot(host, port, binary, deadline, heartbeats, stats, i));
+        }
+
+        bots.shutdown();
+        // games started before the deadline may still be running
+        if (!bots.awaitTermination(duration + 60, TimeUnit.SECONDS))
+            System.out.println("[!] Some games didn't end");
+        heartbeats.shutdownNow();
+
+        stats.print(System.currentTimeMillis() - start);
+        System.exit(0);
+    }
+}
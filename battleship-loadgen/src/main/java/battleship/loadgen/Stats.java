@@ -0,0 +1,38 @@
+package battleship.loadgen;
+
+import battleship.util.Histogram;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures shared by all the bots. Latencies are in microseconds
+ */
+class Stats {
+    final Histogram connectToMatch = new Histogram();
+    final Histogram gridAck = new Histogram();
+    final Histogram shot = new Histogram();
+
+    final AtomicInteger connected = new AtomicInteger();
+    final LongAdder gamesWon = new LongAdder();
+    final LongAdder gamesLost = new LongAdder();
+    final LongAdder opponentDisconnected = new LongAdder();
+    final LongAdder serverFull = new LongAdder();
+    final LongAdder errors = new LongAdder();
+
+    /**
+     * Games ended with a winner are counted by both players
+     */
+    long gamesFinished() {
+        return (gamesWon.sum() + gamesLost.sum()) / 2;
+    }
+
+    void print(long elapsedMs) {
+        System.out.println(String.format("[*] %ds: connected=%d games=%d (%.1f/s) opponentDC=%d serverFull=%d errors=%d",
+                elapsedMs / 1000, connected.get(), gamesFinished(), gamesFinished() * 1000.0 / Math.max(1, elapsedMs),
+                opponentDisconnected.sum(), serverFull.sum(), errors.sum()));
+        System.out.println("    connect-to-match us: " + connectToMatch);
+        System.out.println("    grid-ack us:         " + gridAck);
+        System.out.println("    shot us:             " + shot);
+    }
+}
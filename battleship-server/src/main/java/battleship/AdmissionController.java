@@ -0,0 +1,281 @@
+package battleship;
+
+import battleship.metrics.Metrics;
+import battleship.net.Connection;
+
+import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Decides which accepted sockets are served, before any thread or buffer is allocated for them.
+ * <p>
+ * A socket is served if the open connections, the connections of its address and the active games are under their caps.
+ * Otherwise it's parked in a bounded backlog, without being read, and it's served as soon as there's room again.
+ * Sockets that don't fit the backlog, or that are parked for too long, are refused with SERVER_FULL.
+ * <p>
+ * Closed connections are found by a periodic sweep, that gives their slot back and retries the parked sockets.
+ */
+class AdmissionController {
+    private static final int SWEEP_DELAY = 200; // ms between sweeps of the closed connections and of the backlog
+
+    private int maxConnections;
+    private int maxConnectionsPerAddress;
+    private int maxGames;
+    private int backlogCapacity;
+    private long msMaxParkTime;
+    private LongSupplier activeGames;
+
+    /**
+     * Connections served and not closed yet. Guarded by this
+     */
+    private List<Admitted> admitted;
+    /**
+     * Open connections by remote address. Guarded by this
+     */
+    private Map<InetAddress, Integer> connectionsByAddress;
+    private int openConnections;
+    /**
+     * Sockets waiting for room, oldest first. Guarded by this
+     */
+    private Queue<Parked> backlog;
+    private ScheduledExecutorService sweeper;
+    private LongAdder parkedCount, refusedCount;
+
+    /**
+     * Starts the sweeper task
+     *
+     * @param maxConnections           Max open connections
+     * @param maxConnectionsPerAddress Max open connections from the same address
+     * @param maxGames                 Active games above which new connections are parked
+     * @param backlogCapacity          Max parked sockets
+     * @param msMaxParkTime            Time in milliseconds after which a parked socket is refused
+     * @param metrics                  Registry of the server metrics, where active games are read
+     * @throws IllegalArgumentException If a cap is less or equal to zero, backlogCapacity or msMaxParkTime is less than zero, or metrics is null
+     */
+    AdmissionController(int maxConnections, int maxConnectionsPerAddress, int maxGames, int backlogCapacity,
+                        long msMaxParkTime, Metrics metrics) throws IllegalArgumentException {
+        if (backlogCapacity < 0 || msMaxParkTime < 0) {
+            throw new IllegalArgumentException("backlogCapacity or msMaxParkTime is less than zero");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics is null");
+        }
+
+        setMaxConnections(maxConnections);
+        setMaxConnectionsPerAddress(maxConnectionsPerAddress);
+        setMaxGames(maxGames);
+        this.backlogCapacity = backlogCapacity;
+        this.msMaxParkTime = msMaxParkTime;
+        this.activeGames = () -> metrics.getGauge(Metrics.ACTIVE_GAMES);
+
+        this.admitted = new ArrayList<>();
+        this.connectionsByAddress = new HashMap<>();
+        this.backlog = new ArrayDeque<>();
+        this.parkedCount = metrics.counter("connections.parked");
+        this.refusedCount = metrics.counter("connections.refused");
+        metrics.gauge("connections.open", this::getOpenConnections);
+        metrics.gauge("backlog.length", this::getBacklogLength);
+
+        sweeper = Executors.newSingleThreadScheduledExecutor();
+        sweeper.scheduleWithFixedDelay(sweep, SWEEP_DELAY, SWEEP_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Serves a new socket if there's room, otherwise parks or refuses it.
+     * serve and refuse are run outside the lock: serve on the calling thread, or on the sweeper thread if parked
+     *
+     * @param address Remote address of the socket
+     * @param serve   Serves the socket. Returns the connection, or null if it couldn't be served
+     * @param refuse  Sends SERVER_FULL and closes the socket
+     */
+    void admit(InetAddress address, Supplier<Connection> serve, Runnable refuse) {
+        boolean isAdmitted;
+        synchronized (this) {
+            isAdmitted = tryAcquire(address);
+            if (!isAdmitted && backlog.size() < backlogCapacity) {
+                backlog.add(new Parked(address, serve, refuse));
+                parkedCount.increment();
+                return;
+            }
+        }
+
+        if (isAdmitted) {
+            serve(address, serve);
+        } else {
+            refusedCount.increment();
+            refuse.run();
+        }
+    }
+
+    private Runnable sweep = () -> {
+        try {
+            List<Runnable> actions = new ArrayList<>();
+            long currentTime = System.currentTimeMillis();
+
+            synchronized (this) {
+                Iterator<Admitted> it = admitted.iterator();
+                while (it.hasNext()) {
+                    Admitted a = it.next();
+                    if (a.connection.isClosed()) {
+                        it.remove();
+                        release(a.address);
+                    }
+                }
+
+                Iterator<Parked> parked = backlog.iterator();
+                while (parked.hasNext()) {
+                    Parked p = parked.next();
+                    if (tryAcquire(p.address)) {
+                        parked.remove();
+                        actions.add(() -> serve(p.address, p.serve));
+                    } else if (currentTime - p.since > msMaxParkTime) {
+                        parked.remove();
+                        refusedCount.increment();
+                        actions.add(p.refuse);
+                    }
+                }
+            }
+
+            for (Runnable action : actions) {
+                action.run();
+            }
+        } catch (Exception e) {
+            // an exception would cancel the scheduled task
+            System.out.println("[!] An exception was thrown while sweeping the connections");
+            e.printStackTrace();
+        }
+    };
+
+    private void serve(InetAddress address, Supplier<Connection> serve) {
+        Connection c = serve.get();
+        synchronized (this) {
+            if (c == null)
+                release(address);
+            else
+                admitted.add(new Admitted(address, c));
+        }
+    }
+
+    /**
+     * Takes a slot for the address if all the caps allow it. Must hold the lock
+     */
+    private boolean tryAcquire(InetAddress address) {
+        int fromAddress = connectionsByAddress.getOrDefault(address, 0);
+        if (openConnections >= maxConnections || fromAddress >= maxConnectionsPerAddress || activeGames.getAsLong() >= maxGames)
+            return false;
+
+        connectionsByAddress.put(address, fromAddress + 1);
+        openConnections++;
+        return true;
+    }
+
+    /**
+     * Gives back the slot of a closed connection. Must hold the lock
+     */
+    private void release(InetAddress address) {
+        connectionsByAddress.computeIfPresent(address, (a, n) -> n > 1 ? n - 1 : null);
+        openConnections--;
+    }
+
+    /**
+     * @return Connections served or being served, and not found closed yet
+     */
+    public synchronized int getOpenConnections() {
+        return openConnections;
+    }
+
+    public synchronized int getBacklogLength() {
+        return backlog.size();
+    }
+
+    public synchronized int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param maxConnections Max open connections. Lowering it doesn't close the connections already open
+     * @throws IllegalArgumentException If maxConnections is less or equal to zero
+     */
+    public synchronized void setMaxConnections(int maxConnections) throws IllegalArgumentException {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("maxConnections is less or equal to zero");
+        }
+
+        this.maxConnections = maxConnections;
+    }
+
+    public synchronized int getMaxConnectionsPerAddress() {
+        return maxConnectionsPerAddress;
+    }
+
+    /**
+     * @param maxConnectionsPerAddress Max open connections from the same address
+     * @throws IllegalArgumentException If maxConnectionsPerAddress is less or equal to zero
+     */
+    public synchronized void setMaxConnectionsPerAddress(int maxConnectionsPerAddress) throws IllegalArgumentException {
+        if (maxConnectionsPerAddress <= 0) {
+            throw new IllegalArgumentException("maxConnectionsPerAddress is less or equal to zero");
+        }
+
+        this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+    }
+
+    public synchronized int getMaxGames() {
+        return maxGames;
+    }
+
+    /**
+     * @param maxGames Active games above which new connections are parked
+     * @throws IllegalArgumentException If maxGames is less or equal to zero
+     */
+    public synchronized void setMaxGames(int maxGames) throws IllegalArgumentException {
+        if (maxGames <= 0) {
+            throw new IllegalArgumentException("maxGames is less or equal to zero");
+        }
+
+        this.maxGames = maxGames;
+    }
+
+    /**
+     * Stops the sweeper. Parked sockets are left as they are
+     */
+    public void shutdown() {
+        sweeper.shutdownNow();
+    }
+
+    private static class Admitted {
+        private final InetAddress address;
+        private final Connection connection;
+
+        private Admitted(InetAddress address, Connection connection) {
+            this.address = address;
+            this.connection = connection;
+        }
+    }
+
+    private static class Parked {
+        private final InetAddress address;
+        private final Supplier<Connection> serve;
+        private final Runnable refuse;
+        private final long since;
+
+        private Parked(InetAddress address, Supplier<Connection> serve, Runnable refuse) {
+            this.address = address;
+            this.serve = serve;
+            this.refuse = refuse;
+            this.since = System.currentTimeMillis();
+        }
+    }
+}
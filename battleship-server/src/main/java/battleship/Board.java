@@ -0,0 +1,191 @@
+package battleship;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static battleship.Game.GRID_SIZE;
+
+/**
+ * Bitboard of a player fleet.
+ * <p>
+ * Every cell of the 10x10 grid is a bit of a 128-bit mask, split in two longs (lo: cells 0-63, hi: cells 64-99).
+ * The cell index of the "XXYY" coordinates is (XX - 1) * 10 + (YY - 1).
+ * Shot resolution and the end of game check are bitwise operations that don't allocate.
+ */
+class Board {
+    public static final int NUM_CELLS = GRID_SIZE * GRID_SIZE;
+    private static final String[] COORDINATES = new String[NUM_CELLS];
+
+    static {
+        for (int cell = 0; cell < NUM_CELLS; cell++) {
+            COORDINATES[cell] = String.format("%02d%02d", cell / GRID_SIZE + 1, cell % GRID_SIZE + 1);
+        }
+    }
+
+    private final List<Ship> ships;
+    /**
+     * Index in ships of the ship that occupies each cell, -1 if the cell is water
+     */
+    private final byte[] shipAt;
+    private long fleetLo, fleetHi;
+    private long hitLo, hitHi;
+
+    /**
+     * @param ships The fleet. Ships shouldn't overlap
+     * @throws IllegalArgumentException If ships is null or empty
+     */
+    public Board(List<Ship> ships) throws IllegalArgumentException {
+        if (ships == null || ships.isEmpty())
+            throw new IllegalArgumentException("ships is invalid");
+
+        this.ships = Collections.unmodifiableList(ships);
+        this.shipAt = new byte[NUM_CELLS];
+
+        for (int cell = 0; cell < NUM_CELLS; cell++) {
+            shipAt[cell] = -1;
+            for (int i = 0; i < ships.size(); i++) {
+                if (ships.get(i).occupies(cell))
+                    shipAt[cell] = (byte) i;
+            }
+        }
+        for (Ship s : ships) {
+            fleetLo |= s.getMaskLo();
+            fleetHi |= s.getMaskHi();
+        }
+    }
+
+    /**
+     * Rebuilds a fleet from the mask of its cells.
+     * Ships can't touch, so every group of adjacent cells is a ship
+     *
+     * @param fleetLo Low bits of the mask of the ships cells
+     * @param fleetHi High bits of the mask of the ships cells
+     * @return The board
+     * @throws IllegalArgumentException If the mask is empty
+     */
+    static Board ofFleet(long fleetLo, long fleetHi) throws IllegalArgumentException {
+        List<Ship> ships = new ArrayList<>();
+        long seenLo = 0, seenHi = 0;
+
+        for (int cell = 0; cell < NUM_CELLS; cell++) {
+            if (!contains(fleetLo, fleetHi, cell) || contains(seenLo, seenHi, cell))
+                continue;
+
+            // a ship is a line: it extends from its first cell either along XX (+10) or along YY (+1)
+            int step = cell % GRID_SIZE < GRID_SIZE - 1 && contains(fleetLo, fleetHi, cell + 1) ? 1 : GRID_SIZE;
+            List<String> squares = new ArrayList<>();
+            for (int c = cell; c < NUM_CELLS && contains(fleetLo, fleetHi, c); c += step) {
+                squares.add(coordinates(c));
+                seenLo |= lo(c);
+                seenHi |= hi(c);
+                if (step == 1 && c % GRID_SIZE == GRID_SIZE - 1)
+                    break;
+            }
+            ships.add(new Ship(squares));
+        }
+
+        return new Board(ships);
+    }
+
+    /**
+     * Shoot a cell of the fleet
+     *
+     * @param cell Index of the cell. It isn't checked for validity, therefore any checks must be done before.
+     * @return The result of the shot
+     */
+    public ShotResult shoot(int cell) {
+        if (!contains(fleetLo, fleetHi, cell))
+            return ShotResult.OCEAN;
+
+        Ship ship = ships.get(shipAt[cell]);
+        Shot shot = ship.hit(cell);
+        hitLo |= lo(cell);
+        hitHi |= hi(cell);
+
+        switch (shot) {
+            case SANK:
+                return ship.getSankResult();
+            case DUPLICATE:
+                return ShotResult.DUPLICATE;
+            default:
+                return ShotResult.HIT;
+        }
+    }
+
+    /**
+     * @return True if all the ships cells have been hit
+     */
+    public boolean hasLost() {
+        return ((fleetLo & ~hitLo) | (fleetHi & ~hitHi)) == 0;
+    }
+
+    public List<Ship> getShips() {
+        return ships;
+    }
+
+    /**
+     * @return Low bits of the mask of the ships cells, see lo()
+     */
+    public long getFleetLo() {
+        return fleetLo;
+    }
+
+    /**
+     * @return High bits of the mask of the ships cells, see hi()
+     */
+    public long getFleetHi() {
+        return fleetHi;
+    }
+
+    /**
+     * Gets the cell index of "XXYY" coordinates. They aren't checked for validity, see Protocol.parseCell for
+     * coordinates that come from a client.
+     *
+     * @param coordinates "XXYY" coordinates
+     * @return The cell index
+     */
+    public static int cell(String coordinates) {
+        return cell(
+                (coordinates.charAt(0) - '0') * 10 + (coordinates.charAt(1) - '0'),
+                (coordinates.charAt(2) - '0') * 10 + (coordinates.charAt(3) - '0')
+        );
+    }
+
+    /**
+     * @param x First coordinate, 1-10
+     * @param y Second coordinate, 1-10
+     * @return The cell index
+     */
+    public static int cell(int x, int y) {
+        return (x - 1) * GRID_SIZE + (y - 1);
+    }
+
+    /**
+     * @return The "XXYY" coordinates of the cell
+     */
+    public static String coordinates(int cell) {
+        return COORDINATES[cell];
+    }
+
+    /**
+     * @return The lo part of the mask with only the cell bit set
+     */
+    public static long lo(int cell) {
+        return cell < 64 ? 1L << cell : 0;
+    }
+
+    /**
+     * @return The hi part of the mask with only the cell bit set
+     */
+    public static long hi(int cell) {
+        return cell < 64 ? 0 : 1L << (cell - 64);
+    }
+
+    /**
+     * @return True if the cell bit is set in the mask
+     */
+    public static boolean contains(long maskLo, long maskHi, int cell) {
+        return ((maskLo & lo(cell)) | (maskHi & hi(cell))) != 0;
+    }
+}
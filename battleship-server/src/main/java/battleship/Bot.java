@@ -0,0 +1,234 @@
+package battleship;
+
+import battleship.net.Connection;
+import battleship.net.MessageListener;
+import battleship.util.FleetGenerator;
+import battleship.util.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Server-side opponent, seen by the game as the connection of a player.
+ * <p>
+ * The messages of the game are queued, and every flush schedules the bot on the executor, usually a ForkJoinPool
+ * shared by all the bots: it reads the messages and answers through the listener, outside the game lock.
+ * It places a random fleet, see FleetGenerator. A basic bot shoots the cell with the highest probability density, see DensityMap,
+ * a sampling bot the cell with a ship in most of the fleets sampled by MonteCarlo.
+ */
+class Bot implements Connection {
+    /**
+     * How the bot chooses its shots. SAMPLING isn't a harder tier: it wins about 52% of its games against BASIC,
+     * at several hundred times its CPU per move
+     */
+    enum Tier {
+        BASIC, SAMPLING
+    }
+
+    private final Executor executor;
+    private final Histogram moveTime;
+    private final Random random;
+    /**
+     * Null for a basic bot
+     */
+    private final MonteCarlo sampler;
+    /**
+     * Null if the decisions aren't cached
+     */
+    private final OpeningBook book;
+    private volatile MessageListener listener;
+    /**
+     * Messages not read yet. Guarded by this
+     */
+    private List<String> inbox;
+    private boolean isScheduled;
+    /**
+     * Held by the task that reads the messages, so the moves of the bot never overlap
+     */
+    private final Object moveLock = new Object();
+    /**
+     * Guarded by moveLock
+     */
+    private final DensityMap map;
+    private int lastShot = -1;
+    private volatile boolean isClosed;
+
+    /**
+     * Basic bot
+     *
+     * @param executor Runs the bot moves
+     * @param moveTime Histogram where the time to choose a shot is recorded, in ns
+     * @throws IllegalArgumentException If executor or moveTime is null
+     */
+    Bot(Executor executor, Histogram moveTime) throws IllegalArgumentException {
+        this(executor, moveTime, null, null);
+    }
+
+    /**
+     * @param executor Runs the bot moves
+     * @param moveTime Histogram where the time to choose a shot is recorded, in ns
+     * @param sampler  Targeting of a sampling bot, null for a basic one
+     * @param book     Cache of the decisions shared by the bots, null to compute every move
+     * @throws IllegalArgumentException If executor or moveTime is null
+     */
+    Bot(Executor executor, Histogram moveTime, MonteCarlo sampler, OpeningBook book) throws IllegalArgumentException {
+        if (executor == null || moveTime == null) {
+            throw new IllegalArgumentException("executor or moveTime is null");
+        }
+
+        this.executor = executor;
+        this.moveTime = moveTime;
+        this.random = new Random(ThreadLocalRandom.current().nextLong());
+        this.sampler = sampler;
+        this.book = book;
+        this.inbox = new ArrayList<>();
+        this.map = new DensityMap();
+    }
+
+    /**
+     * @param listener The player of the bot, receives its answers. Must be set before the game starts
+     */
+    void setListener(MessageListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void println(String msg) throws IllegalArgumentException {
+        queue(msg);
+        flush();
+    }
+
+    @Override
+    public synchronized void queue(String msg) throws IllegalArgumentException {
+        if (msg == null) {
+            throw new IllegalArgumentException("Message is null");
+        }
+
+        inbox.add(msg);
+    }
+
+    @Override
+    public void flush() {
+        synchronized (this) {
+            if (isScheduled || inbox.isEmpty())
+                return;
+            isScheduled = true;
+        }
+        executor.execute(this::play);
+    }
+
+    /**
+     * Reads all the messages queued, then sends the answers
+     */
+    private void play() {
+        synchronized (moveLock) {
+            List<String> messages;
+            synchronized (this) {
+                messages = inbox;
+                inbox = new ArrayList<>();
+                isScheduled = false;
+            }
+
+            List<String> answers = new ArrayList<>(1);
+            for (String msg : messages) {
+                String answer = read(msg);
+                if (answer != null)
+                    answers.add(answer);
+            }
+            // the game lock is taken by the listener, never under the bot lock
+            for (String answer : answers) {
+                listener.onMessage(answer);
+            }
+        }
+    }
+
+    /**
+     * @return The answer to the message, or null
+     */
+    private String read(String msg) {
+        if (msg.equals("SEND_GRID")) {
+            return FleetGenerator.nextGrid(random);
+        } else if (msg.equals("TURN_START") || (lastShot >= 0 && (msg.equals("DUPLICATE") || msg.equals("INVALID")))) {
+            long start = System.nanoTime();
+            lastShot = nextShot(map, sampler, book, random);
+            moveTime.record(System.nanoTime() - start);
+            return "SHOOT_" + Board.coordinates(lastShot);
+        } else if (lastShot >= 0 && (msg.equals("HIT") || msg.equals("OCEAN") || msg.startsWith("SANK_"))) {
+            // the answer to the last shot. The same messages with a cell are the shots of the opponent
+            if (msg.equals("HIT"))
+                map.hit(lastShot);
+            else if (msg.equals("OCEAN"))
+                map.miss(lastShot);
+            else
+                map.sank(cells(msg));
+            lastShot = -1;
+        } else if (msg.startsWith("WIN") || msg.startsWith("LOST_")) {
+            isClosed = true;
+        }
+        return null;
+    }
+
+    /**
+     * Chooses the shot of a bot, from the book if the position is there
+     *
+     * @param map     What the bot knows of the opponent fleet
+     * @param sampler Targeting of a sampling bot, null for a basic one
+     * @param book    Cache of the density of the basic bots, or null
+     * @param random  Source of randomness
+     * @return The cell to shoot
+     */
+    static int nextShot(DensityMap map, MonteCarlo sampler, OpeningBook book, Random random) {
+        // only the density is cached, the samples are drawn again for every move
+        if (sampler != null)
+            return sampler.nextShot(map, random);
+
+        OpeningBook.Key key = book != null ? book.keyOf(map) : null;
+        if (key == null)
+            return map.nextShot(random);
+
+        double[] weights = book.get(key);
+        if (weights == null) {
+            long start = System.nanoTime();
+            weights = map.weights();
+            book.put(key, weights, System.nanoTime() - start);
+        }
+        return map.best(weights, random);
+    }
+
+    /**
+     * @return The cells of a "SANK_XXYY_..." message
+     */
+    static int[] cells(String msg) {
+        int[] cells = new int[(msg.length() - 4) / 5];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = Board.cell(msg.substring(5 + i * 5, 9 + i * 5));
+        }
+        return cells;
+    }
+
+    /**
+     * @return true once the game ended
+     */
+    @Override
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    @Override
+    public void disconnect() {
+        isClosed = true;
+    }
+
+    @Override
+    public long getLastBeat() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public String getSocketInfo() {
+        return "bot";
+    }
+}
@@ -0,0 +1,191 @@
+package battleship;
+
+import battleship.util.Placements;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static battleship.util.Placements.MAX_LENGTH;
+
+/**
+ * What a player knows of the opponent fleet, and the probability density of its ships.
+ * <p>
+ * The density of a cell is the number of legal placements of the remaining ships that cover it. A placement is legal
+ * if it's not on a miss, on a sunk ship or next to one, and if it's not next to a hit it doesn't cover:
+ * that hit is of another ship, and ships can't touch. Placements that cover hits weigh more,
+ * so the ships that were hit are sunk first.
+ * <p>
+ * Not thread safe.
+ */
+class DensityMap {
+    /**
+     * Every hit covered multiplies the weight of a placement by 2^HIT_SHIFT
+     */
+    private static final int HIT_SHIFT = 5;
+
+    private long shotLo, shotHi;
+    /**
+     * Hits of the ships not sunk yet
+     */
+    private long hitLo, hitHi;
+    /**
+     * Misses, sunk ships and the cells around them: no ship can be there
+     */
+    private long blockedLo, blockedHi;
+    /**
+     * Ships not sunk yet, by length
+     */
+    private final int[] remaining = new int[MAX_LENGTH + 1];
+    private final double[] density = new double[Board.NUM_CELLS];
+
+    DensityMap() {
+        for (int length : Game.AVAILABLE_SHIPS) {
+            remaining[length]++;
+        }
+    }
+
+    void miss(int cell) {
+        shotLo |= Board.lo(cell);
+        shotHi |= Board.hi(cell);
+        blockedLo |= Board.lo(cell);
+        blockedHi |= Board.hi(cell);
+    }
+
+    void hit(int cell) {
+        shotLo |= Board.lo(cell);
+        shotHi |= Board.hi(cell);
+        hitLo |= Board.lo(cell);
+        hitHi |= Board.hi(cell);
+    }
+
+    /**
+     * @param cells Cells of the ship sunk
+     */
+    void sank(int[] cells) {
+        for (int cell : cells) {
+            hit(cell);
+            hitLo &= ~Board.lo(cell);
+            hitHi &= ~Board.hi(cell);
+            // the placement of length 1 of a cell has the cell index
+            blockedLo |= Placements.haloLo(1, cell);
+            blockedHi |= Placements.haloHi(1, cell);
+        }
+        if (cells.length <= MAX_LENGTH && remaining[cells.length] > 0)
+            remaining[cells.length]--;
+    }
+
+    boolean isShot(int cell) {
+        return Board.contains(shotLo, shotHi, cell);
+    }
+
+    /**
+     * @param random Breaks the ties between the cells with the highest density
+     * @return The cell not shot yet with the highest density
+     */
+    int nextShot(Random random) {
+        computeDensity();
+        return best(density, random);
+    }
+
+    /**
+     * @return The density of every cell, in a new array
+     */
+    double[] weights() {
+        computeDensity();
+        return density.clone();
+    }
+
+    /**
+     * @param weights Weight of every cell
+     * @param random  Breaks the ties between the cells with the highest weight
+     * @return The cell not shot yet with the highest weight
+     */
+    int best(double[] weights, Random random) {
+        int best = -1, ties = 0;
+        for (int cell = 0; cell < Board.NUM_CELLS; cell++) {
+            if (isShot(cell))
+                continue;
+            if (best < 0 || weights[cell] > weights[best]) {
+                best = cell;
+                ties = 1;
+            } else if (weights[cell] == weights[best] && random.nextInt(++ties) == 0) {
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    private void computeDensity() {
+        Arrays.fill(density, 0);
+
+        for (int length = 1; length <= MAX_LENGTH; length++) {
+            if (remaining[length] == 0)
+                continue;
+
+            for (int i = 0, count = Placements.count(length); i < count; i++) {
+                if (!isLegal(length, i))
+                    continue;
+
+                long pLo = Placements.lo(length, i), pHi = Placements.hi(length, i);
+                int covered = Long.bitCount(pLo & hitLo) + Long.bitCount(pHi & hitHi);
+                long weight = (long) remaining[length] << (HIT_SHIFT * covered);
+                add(pLo & ~shotLo, 0, weight);
+                add(pHi & ~shotHi, 64, weight);
+            }
+        }
+    }
+
+    /**
+     * @param length Length of a ship
+     * @param i      Index of the placement, see Placements
+     * @return True if a ship not sunk yet can be there
+     */
+    boolean isLegal(int length, int i) {
+        long pLo = Placements.lo(length, i), pHi = Placements.hi(length, i);
+        if (((pLo & blockedLo) | (pHi & blockedHi)) != 0)
+            return false;
+        // a hit next to the placement is of another ship
+        if (((Placements.haloLo(length, i) & ~pLo & hitLo) | (Placements.haloHi(length, i) & ~pHi & hitHi)) != 0)
+            return false;
+        // all hit, it would be sunk
+        return Long.bitCount(pLo & hitLo) + Long.bitCount(pHi & hitHi) < length;
+    }
+
+    /**
+     * @return Number of ships of the length not sunk yet
+     */
+    int getRemaining(int length) {
+        return remaining[length];
+    }
+
+    long getShotLo() {
+        return shotLo;
+    }
+
+    long getShotHi() {
+        return shotHi;
+    }
+
+    long getBlockedLo() {
+        return blockedLo;
+    }
+
+    long getBlockedHi() {
+        return blockedHi;
+    }
+
+    long getHitLo() {
+        return hitLo;
+    }
+
+    long getHitHi() {
+        return hitHi;
+    }
+
+    private void add(long mask, int offset, double weight) {
+        while (mask != 0) {
+            density[offset + Long.numberOfTrailingZeros(mask)] += weight;
+            mask &= mask - 1;
+        }
+    }
+}
@@ -1,12 +1,22 @@
 package battleship;
 
 import battleship.heartbeat.HeartbeatClient;
-
+import battleship.journal.Journal;
+import battleship.journal.RecoveredGame;
+import battleship.metrics.Metrics;
+import battleship.net.Connection;
+import battleship.net.DetachedConnection;
+import battleship.net.MessageListener;
+import battleship.net.ReplayConnection;
+import battleship.util.BinaryProtocol;
+import battleship.util.Histogram;
+import battleship.util.Placements;
+
+import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -23,243 +33,573 @@ import java.util.stream.Collectors;
  * After SEND_GRID, client should respond with all 7 ships joined by '_'
  * <p>
  * After GAME_START, client only needs to send "SHOOT_XXYY", 1 each turn.
+ * <p>
+ * Every player gets a session token with SESSION_XXXXXXXXXXXXXXXX before SEND_GRID. A game recovered after a restart
+ * is paused until both players resume it sending RESUME_ and their token, see SessionManager.
+ * <p>
+ * A player that loses its connection during the game can reconnect the same way within the grace window:
+ * the messages it may have missed are sent again, see ReplayConnection. Otherwise the opponent wins.
+ * <p>
+ * The messages are queued under the game lock and flushed after it's released: a socket write can block on a slow
+ * reader, and a virtual thread blocked while holding a monitor pins its carrier thread.
  */
 public class Game {
     public static final int NUM_SHIPS = 7;
     public static final int GRID_SIZE = 10;
     public static final List<Integer> AVAILABLE_SHIPS = Arrays.asList(1, 1, 2, 2, 3, 4, 5);
+    private static final SecureRandom TOKENS = new SecureRandom();
 
-    private CountDownLatch playersReady = new CountDownLatch(2);
+    /**
+     * Number of players that sent a valid grid
+     */
+    private int playersReady = 0;
+    private boolean isOver = false;
     public Player currentPlayer;
+    private final long startTime;
+    private final LongAdder gamesFinished, disconnects;
+    private final Histogram gridValidation, shotLatency, gameDuration;
+    private final Journal journal;
+    /**
+     * Keeps the players that lost their connection, null to end the game immediately
+     */
+    private final SessionManager sessions;
+    /**
+     * Id of the game in the journal. Written under the lock before the game is registered for the snapshots
+     */
+    private long gameId;
+    /**
+     * Players created, used to number them in the journal
+     */
+    private int nPlayers = 0;
+    /**
+     * Players of a recovered game that didn't resume it yet. The game is paused until it's zero
+     */
+    private int playersDetached = 0;
 
     public Game() {
+        this(Metrics.DETACHED, Journal.DISABLED);
+    }
+
+    /**
+     * @param metrics Registry where the game records its timings and its end
+     */
+    public Game(Metrics metrics) {
+        this(metrics, Journal.DISABLED);
+    }
+
+    /**
+     * @param metrics Registry where the game records its timings and its end
+     * @param journal Journal where the grids, the shots and the end of the game are recorded
+     */
+    public Game(Metrics metrics, Journal journal) {
+        this(metrics, journal, null);
+    }
+
+    /**
+     * @param metrics  Registry where the game records its timings and its end
+     * @param journal  Journal where the grids, the shots and the end of the game are recorded
+     * @param sessions Keeps the players that lose their connection until they reconnect, null to end the game immediately
+     */
+    Game(Metrics metrics, Journal journal, SessionManager sessions) {
+        this(metrics, journal, sessions, 0);
+    }
+
+    /**
+     * @param gameId Id of a game recovered from the journal, 0 for a new game
+     */
+    private Game(Metrics metrics, Journal journal, SessionManager sessions, long gameId) {
         this.currentPlayer = null;
+        this.journal = journal;
+        this.sessions = sessions;
+        synchronized (this) {
+            this.gameId = gameId;
+        }
+        this.startTime = System.currentTimeMillis();
+        this.gamesFinished = metrics.counter(Metrics.GAMES_FINISHED);
+        this.disconnects = metrics.counter(Metrics.DISCONNECTS);
+        this.gridValidation = metrics.histogram(Metrics.GRID_VALIDATION_NS);
+        this.shotLatency = metrics.histogram(Metrics.SHOT_NS);
+        this.gameDuration = metrics.histogram(Metrics.GAME_DURATION_MS);
+        metrics.counter(Metrics.GAMES_STARTED).increment();
+    }
+
+    /**
+     * Rebuilds a game recovered from the journal. Its players are detached until they resume it
+     *
+     * @param metrics  Registry where the game records its timings and its end
+     * @param journal  Journal where the rest of the game is recorded
+     * @param sessions Keeps the players that lose their connection until they reconnect, can be null
+     * @param state    State of the game in the journal
+     * @return The game
+     */
+    static Game recover(Metrics metrics, Journal journal, SessionManager sessions, RecoveredGame state) {
+        Game game = new Game(metrics, journal, sessions, state.getGameId());
+        synchronized (game) {
+            Player p1 = game.new Player(state);
+            Player p2 = game.new Player(state);
+            p1.setOpponent(p2);
+            p2.setOpponent(p1);
+            p1.restoreHits();
+            p2.restoreHits();
+            game.currentPlayer = state.getCurrentPlayer() == 2 ? p2 : p1;
+            game.playersDetached = 2;
+            journal.resumeGame(game.gameId, game::snapshot);
+        }
+        return game;
+    }
+
+    /**
+     * Joins the players and records the start of the game. The game is registered for the journal snapshots only
+     * once it's complete, a checkpoint in between would skip it and lose it after a restart
+     *
+     * @param first  The player with the first turn
+     * @param second The other player
+     */
+    synchronized void setup(Player first, Player second) {
+        first.setOpponent(second);
+        second.setOpponent(first);
+        currentPlayer = first;
+        gameId = journal.newGame(this::snapshot);
+    }
+
+    /**
+     * @return true if the game has ended, either with a winner or because a player disconnected
+     */
+    public synchronized boolean isOver() {
+        return isOver;
+    }
+
+    /**
+     * Writes the state of the game in the journal. Called by the journal snapshot thread
+     */
+    private synchronized void snapshot() {
+        if (isOver || currentPlayer == null || currentPlayer.opponent == null)
+            return;
+
+        journal.snapshot(gameId, currentPlayer.index);
+        currentPlayer.snapshot();
+        currentPlayer.opponent.snapshot();
     }
 
-    class Player implements Runnable {
-        private HeartbeatClient playerSocket;
-        private List<Ship> ships;
+    /**
+     * A player of the game.
+     * <p>
+     * The game logic is event-driven: every message received from the player is passed to onMessage().
+     * Event-driven connections call it directly, otherwise run() waits on the HeartbeatClient and forwards the messages.
+     * All the events of the same game are serialized on the Game object.
+     */
+    class Player implements Runnable, MessageListener {
+        /**
+         * Connection of the player, kept across reconnections
+         */
+        private final ReplayConnection playerSocket;
+        /**
+         * The connection if it's a HeartbeatClient, read by run(). Null while detached
+         */
+        private HeartbeatClient polledSocket;
+        /**
+         * The player fleet, null until a valid grid is received
+         */
+        private Board board;
         private Player opponent;
-        private List<String> shotHistory;
+        /**
+         * Cells already shot by this player, as a 128-bit mask
+         */
+        private long shotLo, shotHi;
+        /**
+         * 1 for the first player created, 2 for the other
+         */
+        private final int index;
+        /**
+         * Secret that lets the player resume the game from a new connection
+         */
+        private final long token;
+        /**
+         * True while the game waits for the player to reconnect: it lost its connection,
+         * or it didn't resume the game recovered after a restart
+         */
+        private boolean isDetached;
+
+        public Player(Connection playerSocket) {
+            this.playerSocket = new ReplayConnection(playerSocket);
+            this.index = ++nPlayers;
+            this.token = TOKENS.nextLong();
+        }
+
+        /**
+         * Player of a recovered game, detached until it resumes the game
+         */
+        private Player(RecoveredGame state) {
+            this.playerSocket = new ReplayConnection(DetachedConnection.INSTANCE);
+            this.index = ++nPlayers;
+            this.token = state.getToken(index);
+            this.isDetached = true;
+            this.shotLo = state.getShotLo(index);
+            this.shotHi = state.getShotHi(index);
+            if (state.hasGrid(index)) {
+                board = Board.ofFleet(state.getFleetLo(index), state.getFleetHi(index));
+                playersReady++;
+            }
+        }
+
+        /**
+         * Applies the shots of the opponent to the rebuilt board
+         */
+        private void restoreHits() {
+            if (board == null)
+                return;
+
+            for (int cell = 0; cell < Board.NUM_CELLS; cell++) {
+                if (Board.contains(opponent.shotLo, opponent.shotHi, cell))
+                    board.shoot(cell);
+            }
+        }
 
         public Player(HeartbeatClient playerSocket) {
-            this.playerSocket = playerSocket;
-            this.shotHistory = new ArrayList<>();
+            this((Connection) playerSocket);
+            this.polledSocket = playerSocket;
         }
 
+        /**
+         * Waits on the HeartbeatClient input buffer and forwards the messages until the game ends,
+         * or the player is served by another connection. start() must have been called before
+         */
         @Override
         public void run() {
-            int x, y;
-            String nextLine, shot;
-            ShotResult shotResult;
+            HeartbeatClient socket;
+            synchronized (Game.this) {
+                socket = polledSocket;
+            }
 
             try {
-                // grid disposition
-                ships = setupGrid(playerSocket);
-                // If there was an error like other player disconnected
-                if (ships == null) {
-                    // don't disconnect this player now because Scanner may have not buffered message (Windows 10 problem)
+                while (isPolling(socket)) {
+                    // Wait until a message is available or the game ends. Returns null if this player disconnected
+                    String msg = socket.takeMessage();
+                    if (msg != null) {
+                        onMessage(msg);
+                    } else if (socket.isClosed()) {
+                        onClose();
+                    }
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private boolean isPolling(HeartbeatClient socket) {
+            synchronized (Game.this) {
+                return !isOver && socket != null && polledSocket == socket;
+            }
+        }
+
+        /**
+         * Starts the game for this player sending its session token and asking for the grid
+         */
+        public void start() {
+            Connection connection;
+            synchronized (Game.this) {
+                if (isOver)
                     return;
+
+                journal.session(gameId, index, token);
+                if (sessions != null)
+                    sessions.register(this);
+                playerSocket.queue("SESSION_" + BinaryProtocol.formatToken(token));
+                playerSocket.queue("SEND_GRID");
+                connection = playerSocket.getConnection();
+            }
+            connection.flush();
+        }
+
+        /**
+         * Attaches the new connection of a player that reconnected, and sends it the messages it may have missed.
+         * If the old connection wasn't found closed yet, it's closed now.
+         * When both players of a recovered game are attached, the game goes on from where it was
+         *
+         * @param connection   The new connection of the player
+         * @param polledSocket The same connection if it's a HeartbeatClient, otherwise null
+         * @return false if the game has ended, unless the player was detached and can still read the end of it
+         */
+        boolean attach(Connection connection, HeartbeatClient polledSocket) {
+            Connection opponentConnection;
+            synchronized (Game.this) {
+                if (!isDetached) {
+                    if (isOver)
+                        return false;
+                    // the client noticed the drop before the server did
+                    Connection old = playerSocket.getConnection();
+                    detach();
+                    old.disconnect();
                 }
 
-                playersReady.countDown();
-                playersReady.await();
-
-                // game start
-                playerSocket.println("GAME_START");
-                // initial TURN_START
-                if (currentPlayer == this)
-                    playerSocket.println("TURN_START");
-
-                while (true) {
-                    // Wait until a message is available. Meanwhile checks if opponent disconnected
-                    while (!playerSocket.available()) {
-                        if (opponent.playerSocket.isClosed()) {
-                            playerSocket.println("WIN_OPPONENT_DC");
-                            return;
-                        } else {
-                            Thread.sleep(10);
-                        }
-                    }
+                this.polledSocket = polledSocket;
+                isDetached = false;
+                connection.queue("RESUME_OK");
+                playerSocket.attach(connection);
+
+                if (playersDetached > 0 && --playersDetached == 0 && !isOver) {
+                    prompt();
+                    opponent.prompt();
+                }
+                opponentConnection = opponent.playerSocket.getConnection();
+                if (isOver && sessions != null)
+                    sessions.release(this);
+            }
+            opponentConnection.flush();
+            connection.flush();
+            return true;
+        }
+
+        /**
+         * Keeps the messages for the player until it reconnects. Must hold the game lock
+         */
+        private void detach() {
+            isDetached = true;
+            playerSocket.detach();
+            polledSocket = null;
+        }
 
-                    nextLine = playerSocket.getOneMessage();
+        /**
+         * Asks the player of a resumed game for what the game is waiting
+         */
+        private void prompt() {
+            if (board == null)
+                playerSocket.queue("SEND_GRID");
+            else if (playersReady == 2 && currentPlayer == this)
+                playerSocket.queue("TURN_START");
+        }
 
+        /**
+         * Ends the game of a player that didn't reconnect in time, as if it disconnected
+         */
+        void abandon() {
+            Connection opponentConnection;
+            synchronized (Game.this) {
+                if (!isDetached || isOver)
+                    return;
 
-                    // Check if it's not player's turn or a ping message has been received
-                    if (currentPlayer != this || nextLine.startsWith("PING")) {
-                        continue;
-                    }
+                forfeit();
+                opponentConnection = opponent.playerSocket.getConnection();
+            }
+            opponentConnection.flush();
+        }
 
-                    // Check command
-                    if (nextLine.startsWith("SHOOT_") && nextLine.length() == 10) {
-                        shot = nextLine.substring(6);
-
-                        // check if coordinates are valid
-                        try {
-                            x = Integer.parseInt(shot.substring(0, 2));
-                            y = Integer.parseInt(shot.substring(2, 4));
-                            if (x < 1 || x > GRID_SIZE || y < 1 || y > GRID_SIZE) {
-                                throw new NumberFormatException("Invalid coordinates");
-                            }
-                        } catch (NumberFormatException e) {
-                            playerSocket.println("INVALID");
-                            continue;
-                        }
-
-                        // check if shot was already thrown in this game
-                        if (this.shotHistory.contains(shot)) {
-                            playerSocket.println("DUPLICATE");
-                            continue;
-                        }
-
-                        this.shotHistory.add(shot);
-
-                        shotResult = this.opponent.shoot(shot);
-                        switch (shotResult.getStatus()) {
-                            case HIT:
-                                playerSocket.println("HIT");
-                                opponent.playerSocket.println("HIT_" + shot);
-                                break;
-                            case OCEAN:
-                                playerSocket.println("OCEAN");
-                                opponent.playerSocket.println("OCEAN_" + shot);
-                                break;
-                            case SANK:
-                                playerSocket.println("SANK_" + shotResult.getSankShip().toString());
-                                opponent.playerSocket.println("SANK_" + shotResult.getSankShip().toString());
-                                break;
-                        }
-
-                        // check if player Won the game
-                        if (opponent.hasLost()) {
-                            playerSocket.println("WIN");
-                            opponent.playerSocket.println("LOST_" + this.ships.stream()
-                                    .map(Ship::toString)
-                                    .collect(Collectors.joining("_"))
-                            );
-                            break;
-                        }
-
-                        // End turn and pass the game to the next player
-                        currentPlayer = opponent;
-                        playerSocket.println("TURN_END");
-                        opponent.playerSocket.println("TURN_START");
-                    } else {
-                        playerSocket.println("INVALID");
-                        continue;
-                    }
+        /**
+         * Writes the state of the player in the journal, after the game snapshot
+         */
+        private void snapshot() {
+            journal.session(gameId, index, token);
+            if (board != null)
+                journal.grid(gameId, index, board.getFleetLo(), board.getFleetHi());
+            journal.shots(gameId, index, shotLo, shotHi);
+        }
+
+        long getToken() {
+            return token;
+        }
+
+        Player getOpponent() {
+            return opponent;
+        }
+
+        /**
+         * Handles a message of the player. The messages of the step are queued and sent to each player with a single flush
+         */
+        @Override
+        public void onMessage(String nextLine) {
+            Connection own = null, other = null;
+            try {
+                synchronized (Game.this) {
+                    // a recovered game waits for both players
+                    if (isOver || playersDetached > 0 || nextLine.startsWith("PING"))
+                        return;
+
+                    own = playerSocket.getConnection();
+                    other = opponent.playerSocket.getConnection();
+                    // the player answered, so it read what was sent before
+                    playerSocket.acknowledge();
+                    handleMessage(nextLine);
                 }
-            } catch (IllegalStateException | NoSuchElementException e) {
-                // Input Scanner closed or SIGINT
-                opponent.playerSocket.println("WIN_OPPONENT_DC");
-            } catch (InterruptedException e) {
-                // Catches error while awaiting game ready state
-                e.printStackTrace();
             } finally {
-                Thread.currentThread().interrupt();
+                if (own != null) {
+                    own.flush();
+                    other.flush();
+                }
             }
         }
 
+        private void handleMessage(String nextLine) {
+            if (board == null) {
+                // grid disposition
+                long start = System.nanoTime();
+                List<Ship> ships = setupGrid(nextLine);
+                gridValidation.record(System.nanoTime() - start);
+                if (ships == null) {
+                    playerSocket.queue("GRID_ERR");
+                    playerSocket.queue("SEND_GRID");
+                    return;
+                }
+                board = new Board(ships);
+                journal.grid(gameId, index, board.getFleetLo(), board.getFleetHi());
+                playerSocket.queue("GRID_OK");
+
+                // game start when both grids are ready
+                if (++playersReady == 2) {
+                    playerSocket.queue("GAME_START");
+                    opponent.playerSocket.queue("GAME_START");
+                    // initial TURN_START
+                    currentPlayer.playerSocket.queue("TURN_START");
+                }
+                return;
+            }
+
+            // Check if it's not player's turn or the game hasn't started yet
+            if (currentPlayer != this || playersReady < 2) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            handleShot(nextLine);
+            shotLatency.record(System.nanoTime() - start);
+        }
+
         /**
-         * Check if this players has no ship left. Effectively having lost.
-         *
-         * @return True if player has no ship left.
+         * The player connection was closed. If the game is still running, it waits for the player to reconnect
+         * within the grace window, otherwise the opponent wins.
+         * Ignored if the player is already served by a new connection.
+         */
+        @Override
+        public void onClose() {
+            Connection opponentConnection;
+            synchronized (Game.this) {
+                if (isOver || isDetached || !playerSocket.isClosed())
+                    return;
+
+                detach();
+                if (sessions != null && sessions.hold(this))
+                    return;
+
+                forfeit();
+                opponentConnection = opponent.playerSocket.getConnection();
+            }
+            opponentConnection.flush();
+        }
+
+        /**
+         * Ends the game because the player disconnected. Must hold the game lock, the message to the opponent
+         * is flushed by the caller after releasing it
          */
-        private boolean hasLost() {
-            return ships.size() == 0;
+        private void forfeit() {
+            // it can't reconnect anymore
+            isDetached = false;
+            disconnects.increment();
+            journal.end(gameId, opponent.index, Journal.END_OPPONENT_DC);
+            endGame();
+            opponent.playerSocket.queue("WIN_OPPONENT_DC");
         }
 
         /**
-         * Shoot in the player's grid
+         * Ends the game and wakes up the players waiting for a message
+         */
+        private void endGame() {
+            isOver = true;
+            gameDuration.record(System.currentTimeMillis() - startTime);
+            wakeUp();
+            opponent.wakeUp();
+            // a detached player keeps its session until its window expires, to read the end of the game
+            if (sessions != null) {
+                if (!isDetached)
+                    sessions.release(this);
+                if (!opponent.isDetached)
+                    sessions.release(opponent);
+            }
+        }
+
+        private void wakeUp() {
+            if (polledSocket != null)
+                polledSocket.wakeUp();
+        }
+
+        /**
+         * Handles a message received during the player's turn
          *
-         * @param coordinates "XXYY" coordinates of the shot.
-         *                    They aren't checked for validity e.g. x={1..10}, y={1..10}. Therefore any checks must be done before.
-         * @return Returns the result of the shoot
+         * @param nextLine The message received
          */
-        private ShotResult shoot(String coordinates) throws IllegalArgumentException {
-            if (coordinates == null || coordinates.length() != 4)
-                throw new IllegalArgumentException("Invalid coordinates");
+        private void handleShot(String nextLine) {
+            int cell;
+            ShotResult shotResult;
 
-            for (Ship s : ships) {
-                switch (s.hit(coordinates)) {
-                    case OCEAN:
-                        continue;
+            // Check command and coordinates
+            cell = Protocol.parseShot(nextLine);
+            if (cell >= 0) {
+                // check if shot was already thrown in this game
+                if (Board.contains(shotLo, shotHi, cell)) {
+                    playerSocket.queue("DUPLICATE");
+                    return;
+                }
+
+                shotLo |= Board.lo(cell);
+                shotHi |= Board.hi(cell);
+
+                shotResult = this.opponent.board.shoot(cell);
+                journal.shot(gameId, index, cell, shotResult.getStatus());
+                switch (shotResult.getStatus()) {
                     case HIT:
-                        return new ShotResult(Shot.HIT);
+                        playerSocket.queue("HIT");
+                        opponent.playerSocket.queue(Protocol.hitAt(cell));
+                        break;
+                    case OCEAN:
+                        playerSocket.queue("OCEAN");
+                        opponent.playerSocket.queue(Protocol.oceanAt(cell));
+                        break;
                     case SANK:
-                        ships.remove(s);
-                        return new ShotResult(Shot.SANK, s);
-                    case DUPLICATE:
-                        return new ShotResult(Shot.DUPLICATE);
+                        playerSocket.queue(shotResult.getSankShip().getSankMessage());
+                        opponent.playerSocket.queue(shotResult.getSankShip().getSankMessage());
+                        break;
+                }
+
+                // check if player Won the game
+                if (opponent.board.hasLost()) {
+                    gamesFinished.increment();
+                    journal.end(gameId, index, Journal.END_WIN);
+                    endGame();
+                    playerSocket.queue("WIN");
+                    opponent.playerSocket.queue("LOST_" + board.getShips().stream()
+                            .filter(ship -> ship.squaresRemained() > 0)
+                            .map(Ship::toString)
+                            .collect(Collectors.joining("_"))
+                    );
+                    return;
                 }
-            }
 
-            // if no ship was hit, then it was a miss
-            return new ShotResult(Shot.OCEAN);
+                // End turn and pass the game to the next player
+                currentPlayer = opponent;
+                playerSocket.queue("TURN_END");
+                opponent.playerSocket.queue("TURN_START");
+            } else {
+                playerSocket.queue("INVALID");
+            }
         }
 
         /**
-         * Get grid from "in" and checks that is formatted correctly.
+         * Checks that the grid is formatted correctly.
          * - Checks number of ships sent
          * - Checks format of each one
          * - Checks there's the right number of ships
          * - Checks ships disposition don't overlap or go outside the grid.
          *
-         * @param playerSocket The HeartbeatClient that manages the player socket
-         * @return The list of Ships. In case of unknown error, will return null.
+         * @param grid The grid received from the player
+         * @return The list of Ships. If the grid isn't valid, will return null.
          */
-        private List<Ship> setupGrid(HeartbeatClient playerSocket) {
-            String grid;
-            String[] inputShips;
-            boolean isGridOk;
-            List<Ship> parsedShips = null;
+        List<Ship> setupGrid(String grid) {
+            String[] inputShips = grid.split("_");
 
-            try {
-                // GET grid and checkGrid() -> if Ok, try parseGrid() -> if Ok, continue to game
-                isGridOk = false;
-                do {
-                    playerSocket.println("SEND_GRID");
-
-                    // Wait for message
-                    while (!playerSocket.available()) {
-                        if (playerSocket.isClosed()) {
-                            return null;
-                        }
-                        if (opponent.playerSocket.isClosed()) {
-                            playerSocket.println("WIN_OPPONENT_DC");
-                            return null;
-                        }
-
-                        Thread.sleep(10);
-                    }
-
-                    grid = playerSocket.getOneMessage();
-
-                    inputShips = grid.split("_");
-
-                    if (inputShips.length != NUM_SHIPS || !checkLenOfAllElements(inputShips, 7) || !checkShipsFormat(inputShips)) {
-                        playerSocket.println("GRID_ERR");
-                    } else {
-                        // PARSE Grid
-                        // call parseGrid only after initial format checking
-                        parsedShips = parseGrid(inputShips);
-                        if (parsedShips == null) {
-                            playerSocket.println("GRID_ERR");
-                        }
-                        isGridOk = true;
-                    }
-
-                } while (!isGridOk);
-
-                playerSocket.println("GRID_OK");
-                return parsedShips;
-
-            } catch (IllegalStateException | InterruptedException e) {
-                e.printStackTrace();
+            if (inputShips.length != NUM_SHIPS || !checkLenOfAllElements(inputShips, 7) || !checkShipsFormat(inputShips)) {
+                return null;
             }
 
-            // if unknown error occurs
-            return null;
+            // call parseGrid only after initial format checking
+            return parseGrid(inputShips);
         }
 
         /**
@@ -268,78 +608,32 @@ public class Game {
          * @param inputShips the array of ships received from user input
          * @return A list with all the ships if the grid is valid, otherwise null
          */
-        private List<Ship> parseGrid(String[] inputShips) throws IllegalArgumentException {
+        List<Ship> parseGrid(String[] inputShips) throws IllegalArgumentException {
             if (inputShips == null || inputShips.length != NUM_SHIPS)
                 throw new IllegalArgumentException("Invalid input ships array");
 
             try {
                 List<Ship> ships = new ArrayList<>();
-                List<String> tmpShipCells;
-                // cellState has the values: 0=(water), 1=(ship | waterNextToShip). Ship's shouldn't be placed on cellState 1
-                boolean[][] tempGrid = new boolean[GRID_SIZE][GRID_SIZE];
-                int column, row, length;
-                char orientation;
+                // ships and cells next to them: the following ships can't be placed there
+                long blockedLo = 0, blockedHi = 0;
 
                 for (String ship : inputShips) {
-                    column = Integer.parseInt(ship.substring(0, 2)) - 1;
-                    row = Integer.parseInt(ship.substring(2, 4)) - 1;
-                    length = Integer.parseInt(ship.substring(5, 7));
-                    orientation = ship.charAt(4);
-                    tmpShipCells = new ArrayList<>();
-
-                    // marks cells where ships can't be placed
-                    switch (orientation) {
-                        case 'H':
-                            // check all ship's cells are placeable
-                            for (int i = 0; i < length; i++) {
-                                if (tempGrid[row][column + i])
-                                    return null;
-                            }
-
-                            // updates cell state
-                            for (int i = 0; i < length; i++) {
-                                // blocks all cells apart from the next one on the right
-                                for (int dx = (row > 0 ? -1 : 0); dx <= (row < GRID_SIZE - 1 ? 1 : 0); ++dx) {
-                                    for (int dy = (column + i > 0 ? -1 : 0); dy <= (column + i < GRID_SIZE - 1 ? 1 : 0); ++dy) {
-                                        if (dx != 0 || dy != 1) {
-                                            tempGrid[row + dx][column + i + dy] = true;
-                                        }
-                                    }
-                                }
-                                tmpShipCells.add(String.format("%02d%02d", (row + 1), (column + 1 + i)));
-                            }
-                            // set last cell on the right
-                            if (column + length < GRID_SIZE) {
-                                tempGrid[row][column + length] = true;
-                            }
-                            break;
-                        case 'V':
-                            // check all ship's cells are placeable
-                            for (int i = 0; i < length; i++) {
-                                if (tempGrid[row + i][column])
-                                    return null;
-                            }
-
-                            // updates cell state
-                            for (int i = 0; i < length; i++) {
-                                // blocks all cells apart from the next one on the bottom
-                                for (int dx = (row + i > 0 ? -1 : 0); dx <= (row + i < GRID_SIZE - 1 ? 1 : 0); ++dx) {
-                                    for (int dy = (column > 0 ? -1 : 0); dy <= (column < GRID_SIZE - 1 ? 1 : 0); ++dy) {
-                                        if (dx != 1 || dy != 0) {
-                                            tempGrid[row + i + dx][column + dy] = true;
-                                        }
-                                    }
-                                }
-                                tmpShipCells.add(String.format("%02d%02d", (row + 1 + i), (column + 1)));
-                            }
-                            // set last cell on the bottom
-                            if (row + length < GRID_SIZE) {
-                                tempGrid[row + length][column] = true;
-                            }
-                            break;
-                    }
-
-                    ships.add(new Ship(tmpShipCells));
+                    int column = Integer.parseInt(ship.substring(0, 2)) - 1;
+                    int row = Integer.parseInt(ship.substring(2, 4)) - 1;
+                    int length = Integer.parseInt(ship.substring(5, 7));
+                    char orientation = ship.charAt(4);
+                    if ((orientation != 'H' && orientation != 'V') || column < 0 || column >= GRID_SIZE)
+                        return null;
+
+                    int i = Placements.indexOf(length, row * GRID_SIZE + column, orientation == 'V');
+                    if (i < 0)
+                        return null;
+                    if (((Placements.lo(length, i) & blockedLo) | (Placements.hi(length, i) & blockedHi)) != 0)
+                        return null;
+
+                    blockedLo |= Placements.haloLo(length, i);
+                    blockedHi |= Placements.haloHi(length, i);
+                    ships.add(new Ship(Placements.squares(length, i)));
                 }
 
                 return ships;
@@ -349,7 +643,7 @@ public class Game {
             }
         }
 
-        private boolean checkShipsFormat(String[] ships) {
+        boolean checkShipsFormat(String[] ships) {
             if (ships == null) return false;
 
             try {
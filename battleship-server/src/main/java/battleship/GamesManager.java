@@ -1,36 +1,355 @@
 package battleship;
 
 import battleship.heartbeat.HeartbeatClient;
+import battleship.journal.Journal;
+import battleship.journal.RecoveredGame;
+import battleship.metrics.Metrics;
+import battleship.net.Connection;
+import battleship.net.NioClient;
+import battleship.util.Histogram;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Starts the games of the matched players.
+ * <p>
+ * Matched pairs are queued to the bootstrap stage, that sends OPPONENT_FOUND and SEND_GRID on its own threads,
+ * so a slow write to a player doesn't hold up the matchmaking of the others.
+ * A player can also be matched with a Bot. All the bots play on a ForkJoinPool, apart from the threads of the players:
+ * its threads have the lowest priority, and every move is a short task with a bounded budget, run in FIFO order,
+ * so the games against bots share the pool fairly.
+ */
 class GamesManager {
+    private static final int BOOTSTRAP_THREADS = 4;
+    private static final long DEFAULT_MOVE_BUDGET = 50; // ms
+    private static final int DEFAULT_SAMPLES = 2000;
+
     private ExecutorService gamesPool;
+    private ThreadPoolExecutor bootstrapPool;
+    private ForkJoinPool botPool;
+    private Metrics metrics;
+    private Journal journal;
+    /**
+     * Keeps the players that lose their connection, null to end their games immediately
+     */
+    private volatile SessionManager sessions;
+    private LongAdder botGames;
+    private Histogram botMoveTime;
+    private Histogram botSamples;
+    private volatile Bot.Tier botTier = Bot.Tier.BASIC;
+    private volatile MonteCarlo monteCarlo;
+    /**
+     * Shared by the bots, null if their decisions aren't cached
+     */
+    private volatile OpeningBook book;
 
     public GamesManager() {
         // 2 players per game
-        this.gamesPool = Executors.newCachedThreadPool();
+        this(Executors.newCachedThreadPool());
+    }
+
+    /**
+     * @param gamesPool Executor that runs the players of thread-per-player games
+     * @throws IllegalArgumentException If gamesPool is null
+     */
+    public GamesManager(ExecutorService gamesPool) throws IllegalArgumentException {
+        this(gamesPool, Metrics.DETACHED);
+    }
+
+    /**
+     * @param gamesPool Executor that runs the players of thread-per-player games
+     * @param metrics   Registry of the server metrics, passed to the games
+     * @throws IllegalArgumentException If gamesPool or metrics is null
+     */
+    public GamesManager(ExecutorService gamesPool, Metrics metrics) throws IllegalArgumentException {
+        this(gamesPool, metrics, BOOTSTRAP_THREADS);
+    }
+
+    /**
+     * @param gamesPool        Executor that runs the players of thread-per-player games
+     * @param metrics          Registry of the server metrics, passed to the games
+     * @param bootstrapThreads Number of threads of the bootstrap stage
+     * @throws IllegalArgumentException If gamesPool or metrics is null, or bootstrapThreads is less or equal to zero
+     */
+    public GamesManager(ExecutorService gamesPool, Metrics metrics, int bootstrapThreads) throws IllegalArgumentException {
+        this(gamesPool, metrics, bootstrapThreads, Journal.DISABLED);
+    }
+
+    /**
+     * @param gamesPool        Executor that runs the players of thread-per-player games
+     * @param metrics          Registry of the server metrics, passed to the games
+     * @param bootstrapThreads Number of threads of the bootstrap stage
+     * @param journal          Journal where the games are recorded
+     * @throws IllegalArgumentException If gamesPool, metrics or journal is null, or bootstrapThreads is less or equal to zero
+     */
+    public GamesManager(ExecutorService gamesPool, Metrics metrics, int bootstrapThreads, Journal journal) throws IllegalArgumentException {
+        this(gamesPool, metrics, bootstrapThreads, journal, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * @param gamesPool        Executor that runs the players of thread-per-player games
+     * @param metrics          Registry of the server metrics, passed to the games
+     * @param bootstrapThreads Number of threads of the bootstrap stage
+     * @param journal          Journal where the games are recorded
+     * @param botThreads       Parallelism of the pool where the bots play
+     * @throws IllegalArgumentException If gamesPool, metrics or journal is null, or a number of threads is less or equal to zero
+     */
+    public GamesManager(ExecutorService gamesPool, Metrics metrics, int bootstrapThreads, Journal journal, int botThreads) throws IllegalArgumentException {
+        if (gamesPool == null || metrics == null || journal == null) {
+            throw new IllegalArgumentException("gamesPool, metrics or journal is null");
+        }
+        if (bootstrapThreads <= 0 || botThreads <= 0) {
+            throw new IllegalArgumentException("bootstrapThreads or botThreads is less or equal to zero");
+        }
+
+        this.gamesPool = gamesPool;
+        this.metrics = metrics;
+        this.journal = journal;
+        this.bootstrapPool = new ThreadPoolExecutor(bootstrapThreads, bootstrapThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        // asyncMode: the moves are independent tasks, run in FIFO order
+        this.botPool = new ForkJoinPool(botThreads, pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("bot-" + t.getPoolIndex());
+            // the players threads come first
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }, null, true);
+        this.botGames = metrics.counter(Metrics.BOT_GAMES);
+        this.botMoveTime = metrics.histogram(Metrics.BOT_MOVE_NS);
+        this.botSamples = metrics.histogram(Metrics.BOT_SAMPLES);
+        this.monteCarlo = new MonteCarlo(TimeUnit.MILLISECONDS.toNanos(DEFAULT_MOVE_BUDGET), DEFAULT_SAMPLES, botSamples);
+        metrics.gauge(Metrics.BOOTSTRAP_QUEUE_LENGTH, this::getBootstrapQueueLength);
     }
 
-    public void create(HeartbeatClient socketP1, HeartbeatClient socketP2) throws IllegalArgumentException {
+    /**
+     * Queues 2 matched players to the bootstrap stage. Returns immediately
+     *
+     * @param socketP1 The player with the first turn
+     * @param socketP2 The other player
+     * @throws IllegalArgumentException If a player socket is null
+     */
+    public void start(Connection socketP1, Connection socketP2) throws IllegalArgumentException {
         if (socketP1 == null || socketP2 == null) {
             throw new IllegalArgumentException("Player socket is null");
         }
 
-        // Join players in the same game
-        Game game = new Game();
+        bootstrapPool.execute(() -> {
+            try {
+                // sent with SEND_GRID
+                socketP1.queue("OPPONENT_FOUND");
+                socketP2.queue("OPPONENT_FOUND");
+
+                create(socketP1, socketP2);
+            } catch (Exception e) {
+                System.out.println("[!] An exception was thrown while starting a game");
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * @param sessions Keeps the players of the following games that lose their connection, until they reconnect.
+     *                 Null to end their games immediately
+     */
+    public void setSessions(SessionManager sessions) {
+        this.sessions = sessions;
+    }
+
+    public Bot.Tier getBotTier() {
+        return botTier;
+    }
+
+    /**
+     * @param botTier Tier of the bots of the next games
+     * @throws IllegalArgumentException If botTier is null
+     */
+    public void setBotTier(Bot.Tier botTier) throws IllegalArgumentException {
+        if (botTier == null) {
+            throw new IllegalArgumentException("botTier is null");
+        }
+
+        this.botTier = botTier;
+    }
+
+    /**
+     * Sets the budget of every move of the sampling bots of the next games
+     *
+     * @param msMoveBudget Milliseconds after which a move ends
+     * @param maxSamples   Fleets sampled after which a move ends before its budget
+     * @throws IllegalArgumentException If msMoveBudget or maxSamples is less or equal to zero
+     */
+    public void setBotBudget(long msMoveBudget, int maxSamples) throws IllegalArgumentException {
+        this.monteCarlo = new MonteCarlo(TimeUnit.MILLISECONDS.toNanos(msMoveBudget), maxSamples, botSamples);
+    }
+
+    /**
+     * @param book Cache of the decisions of the bots of the next games, null to compute every move
+     */
+    void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Queues a player to the bootstrap stage, to play against a bot. Returns immediately
+     *
+     * @param socket The player, it has the first turn
+     * @throws IllegalArgumentException If the player socket is null
+     */
+    public void startWithBot(Connection socket) throws IllegalArgumentException {
+        if (socket == null) {
+            throw new IllegalArgumentException("Player socket is null");
+        }
+
+        bootstrapPool.execute(() -> {
+            try {
+                socket.queue("OPPONENT_FOUND");
+                createWithBot(socket);
+            } catch (Exception e) {
+                System.out.println("[!] An exception was thrown while starting a game");
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * @return Number of matched pairs waiting for the bootstrap stage
+     */
+    public int getBootstrapQueueLength() {
+        return bootstrapPool.getQueue().size();
+    }
+
+    /**
+     * @return Number of threads of the pool that runs the players, -1 if the pool doesn't report it (virtual threads)
+     */
+    public int getGamesPoolSize() {
+        return gamesPool instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) gamesPool).getPoolSize() : -1;
+    }
+
+    /**
+     * Stops the bootstrap stage. Games already started aren't affected
+     */
+    public void shutdown() {
+        bootstrapPool.shutdownNow();
+        botPool.shutdownNow();
+    }
+
+    /**
+     * Creates a game and sends SEND_GRID to both players, on the calling thread
+     *
+     * @param socketP1 The player with the first turn
+     * @param socketP2 The other player
+     * @throws IllegalArgumentException If a player socket is null or the players are served by different I/O models
+     */
+    public void create(Connection socketP1, Connection socketP2) throws IllegalArgumentException {
+        if (socketP1 == null || socketP2 == null) {
+            throw new IllegalArgumentException("Player socket is null");
+        }
+
+        if (socketP1 instanceof NioClient && socketP2 instanceof NioClient) {
+            create((NioClient) socketP1, (NioClient) socketP2);
+        } else if (socketP1 instanceof HeartbeatClient && socketP2 instanceof HeartbeatClient) {
+            create((HeartbeatClient) socketP1, (HeartbeatClient) socketP2);
+        } else {
+            throw new IllegalArgumentException("Players are served by different I/O models");
+        }
+    }
+
+    /**
+     * Event-driven game: the players messages are delivered by the event loops, no thread is used
+     */
+    private void create(NioClient socketP1, NioClient socketP2) {
+        Game game = new Game(metrics, journal, sessions);
         Game.Player p1 = game.new Player(socketP1);
         Game.Player p2 = game.new Player(socketP2);
+        game.setup(p1, p2);
+
+        socketP1.setListener(p1);
+        socketP2.setListener(p2);
+        p1.start();
+        p2.start();
+    }
 
-        // Set-up game
-        p1.setOpponent(p2);
-        p2.setOpponent(p1);
-        game.currentPlayer = p1;
+    /**
+     * Thread-per-player game: each player waits on its HeartbeatClient
+     */
+    private void create(HeartbeatClient socketP1, HeartbeatClient socketP2) {
+        Game game = new Game(metrics, journal, sessions);
+        Game.Player p1 = game.new Player(socketP1);
+        Game.Player p2 = game.new Player(socketP2);
+        game.setup(p1, p2);
+        p1.start();
+        p2.start();
 
         // Start game
         //TODO Threads aren't instantly closed when run() returns
         gamesPool.execute(p1);
         gamesPool.execute(p2);
     }
+
+    /**
+     * Creates a game against a bot and sends SEND_GRID to the player, on the calling thread
+     *
+     * @param socket The player with the first turn
+     * @throws IllegalArgumentException If the player socket is null or isn't served by a known I/O model
+     */
+    public void createWithBot(Connection socket) throws IllegalArgumentException {
+        if (!(socket instanceof NioClient) && !(socket instanceof HeartbeatClient)) {
+            throw new IllegalArgumentException("Unknown connection type");
+        }
+
+        Game game = new Game(metrics, journal, sessions);
+        Game.Player p1 = socket instanceof HeartbeatClient ? game.new Player((HeartbeatClient) socket) : game.new Player(socket);
+        Bot bot = new Bot(botPool, botMoveTime, botTier == Bot.Tier.SAMPLING ? monteCarlo : null, book);
+        Game.Player p2 = game.new Player(bot);
+        game.setup(p1, p2);
+        botGames.increment();
+
+        if (socket instanceof NioClient)
+            ((NioClient) socket).setListener(p1);
+        bot.setListener(p2);
+        p1.start();
+        p2.start();
+        if (socket instanceof HeartbeatClient)
+            gamesPool.execute(p1);
+    }
+
+    /**
+     * Rebuilds a game recovered from the journal, its players are detached
+     *
+     * @param state State of the game in the journal
+     * @return The game
+     */
+    public Game recover(RecoveredGame state) {
+        return Game.recover(metrics, journal, sessions, state);
+    }
+
+    /**
+     * Attaches the new connection of a player that resumed its game, and serves it as create() does
+     *
+     * @param player     The player, detached or still attached to its old connection
+     * @param connection The new connection
+     * @return false if the game can't be resumed anymore
+     * @throws IllegalArgumentException If the connection isn't served by a known I/O model
+     */
+    public boolean resume(Game.Player player, Connection connection) throws IllegalArgumentException {
+        if (connection instanceof NioClient) {
+            if (!player.attach(connection, null))
+                return false;
+            ((NioClient) connection).setListener(player);
+        } else if (connection instanceof HeartbeatClient) {
+            if (!player.attach(connection, (HeartbeatClient) connection))
+                return false;
+            gamesPool.execute(player);
+        } else {
+            throw new IllegalArgumentException("Unknown connection type");
+        }
+        return true;
+    }
 }
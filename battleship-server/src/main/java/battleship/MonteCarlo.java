@@ -0,0 +1,197 @@
+package battleship;
+
+import battleship.util.Histogram;
+import battleship.util.Placements;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static battleship.util.Placements.MAX_LENGTH;
+
+/**
+ * Targeting of the sampling bots: samples fleets consistent with what the bot knows, and shoots the cell that has a ship
+ * in most of them.
+ * <p>
+ * A sample places the ships not sunk yet on legal placements (see DensityMap.isLegal) that don't touch each other:
+ * first through the hits not covered yet, then anywhere. Samples where a ship can't be placed are discarded.
+ * A move stops after maxSamples samples or when its time budget runs out, so both its time and its CPU are bounded:
+ * it runs on a single thread. If no sample was found in time, the bot falls back to the density of DensityMap.
+ * <p>
+ * It's only about one shot per game better than DensityMap: the density is already close to the greedy choice.
+ * <p>
+ * Immutable, shared by all the sampling bots.
+ */
+class MonteCarlo {
+    /**
+     * The clock is read every CHECK_PERIOD samples
+     */
+    private static final int CHECK_PERIOD = 16;
+
+    private final long nsBudget;
+    private final int maxSamples;
+    private final Histogram samples;
+
+    /**
+     * @param nsBudget   Time given to a move, in ns
+     * @param maxSamples Samples after which a move ends before its budget
+     * @param samples    Histogram where the samples of every move are recorded
+     * @throws IllegalArgumentException If nsBudget or maxSamples is less or equal to zero, or samples is null
+     */
+    MonteCarlo(long nsBudget, int maxSamples, Histogram samples) throws IllegalArgumentException {
+        if (nsBudget <= 0 || maxSamples <= 0) {
+            throw new IllegalArgumentException("nsBudget or maxSamples is less or equal to zero");
+        }
+        if (samples == null) {
+            throw new IllegalArgumentException("samples is null");
+        }
+
+        this.nsBudget = nsBudget;
+        this.maxSamples = maxSamples;
+        this.samples = samples;
+    }
+
+    /**
+     * @param map    What the bot knows of the opponent fleet
+     * @param random Source of randomness
+     * @return The cell not shot yet that has a ship in most samples
+     */
+    int nextShot(DensityMap map, Random random) {
+        return map.best(weights(map, random), random);
+    }
+
+    /**
+     * @param map    What the bot knows of the opponent fleet
+     * @param random Source of randomness
+     * @return The weight of the samples that have a ship on every cell, or the density of DensityMap without samples
+     */
+    double[] weights(DensityMap map, Random random) {
+        long deadline = System.nanoTime() + nsBudget;
+
+        // the ships not sunk from the longest one, and their legal placements, listed once for all the samples
+        int[] ships = new int[Game.NUM_SHIPS];
+        int nShips = 0;
+        int[][] legal = new int[MAX_LENGTH + 1][];
+        int[] nLegal = new int[MAX_LENGTH + 1];
+        for (int length = MAX_LENGTH; length >= 1; length--) {
+            if (map.getRemaining(length) == 0)
+                continue;
+
+            for (int k = 0; k < map.getRemaining(length) && nShips < ships.length; k++) {
+                ships[nShips++] = length;
+            }
+            legal[length] = new int[Placements.count(length)];
+            for (int i = 0; i < legal[length].length; i++) {
+                if (map.isLegal(length, i))
+                    legal[length][nLegal[length]++] = i;
+            }
+        }
+
+        double[] counts = new double[Board.NUM_CELLS];
+        int[] placed = new int[nShips];
+        int n = 0;
+        for (int attempt = 0; n < maxSamples; attempt++) {
+            if (attempt % CHECK_PERIOD == 0 && System.nanoTime() - deadline >= 0)
+                break;
+            double weight = sample(map, ships, nShips, legal, nLegal, placed, random);
+            if (weight == 0)
+                continue;
+
+            for (int s = 0; s < nShips; s++) {
+                add(counts, Placements.lo(ships[s], placed[s]), 0, weight);
+                add(counts, Placements.hi(ships[s], placed[s]), 64, weight);
+            }
+            n++;
+        }
+
+        samples.record(n);
+        return n == 0 ? map.weights() : counts;
+    }
+
+    /**
+     * Places every ship on a random placement, each one chosen with the same odds among the ones left.
+     * That's not a uniform choice among the fleets, so the sample is weighted: 1 / (its probability * the number of
+     * orders in which it could have been drawn), and the sum of the weights of a fleet tends to the same for all fleets
+     *
+     * @param placed Filled with the placement of every ship
+     * @return The weight of the sample, 0 if a ship couldn't be placed
+     */
+    private double sample(DensityMap map, int[] ships, int nShips, int[][] legal, int[] nLegal, int[] placed, Random random) {
+        Arrays.fill(placed, -1);
+        double weight = 1;
+        // halos of the ships placed
+        long usedLo = 0, usedHi = 0;
+        // hits not covered by a ship yet
+        long hitLo = map.getHitLo(), hitHi = map.getHitHi();
+
+        // a ship through the first hit not covered: the order is fixed by the fleet, it's drawn only in one way
+        while ((hitLo | hitHi) != 0) {
+            int cell = hitLo != 0 ? Long.numberOfTrailingZeros(hitLo) : 64 + Long.numberOfTrailingZeros(hitHi);
+            long cellLo = Board.lo(cell), cellHi = Board.hi(cell);
+
+            int ship = -1, placement = -1, seen = 0;
+            for (int s = 0; s < nShips; s++) {
+                int length = ships[s];
+                // ships of the same length are interchangeable, only the first one left is tried
+                if (placed[s] >= 0 || (s > 0 && ships[s - 1] == length && placed[s - 1] < 0))
+                    continue;
+
+                for (int k = 0; k < nLegal[length]; k++) {
+                    int i = legal[length][k];
+                    long pLo = Placements.lo(length, i), pHi = Placements.hi(length, i);
+                    if (((pLo & cellLo) | (pHi & cellHi)) == 0 || ((pLo & usedLo) | (pHi & usedHi)) != 0)
+                        continue;
+                    if (random.nextInt(++seen) == 0) {
+                        ship = s;
+                        placement = i;
+                    }
+                }
+            }
+            if (ship < 0)
+                return 0;
+
+            weight *= seen;
+            placed[ship] = placement;
+            usedLo |= Placements.haloLo(ships[ship], placement);
+            usedHi |= Placements.haloHi(ships[ship], placement);
+            hitLo &= ~Placements.lo(ships[ship], placement);
+            hitHi &= ~Placements.hi(ships[ship], placement);
+        }
+
+        // then the other ships, longest first. Those of the same length could have been drawn in any order
+        int lastLength = 0, drawn = 0;
+        for (int s = 0; s < nShips; s++) {
+            if (placed[s] >= 0)
+                continue;
+
+            int length = ships[s];
+            int count = 0;
+            for (int k = 0; k < nLegal[length]; k++) {
+                int i = legal[length][k];
+                if (((Placements.lo(length, i) & usedLo) | (Placements.hi(length, i) & usedHi)) == 0)
+                    count++;
+            }
+            if (count == 0)
+                return 0;
+
+            int chosen = random.nextInt(count);
+            for (int k = 0; placed[s] < 0; k++) {
+                int i = legal[length][k];
+                if (((Placements.lo(length, i) & usedLo) | (Placements.hi(length, i) & usedHi)) == 0 && chosen-- == 0)
+                    placed[s] = i;
+            }
+            drawn = length == lastLength ? drawn + 1 : 1;
+            lastLength = length;
+            weight *= (double) count / drawn;
+            usedLo |= Placements.haloLo(length, placed[s]);
+            usedHi |= Placements.haloHi(length, placed[s]);
+        }
+        return weight;
+    }
+
+    private static void add(double[] counts, long mask, int offset, double weight) {
+        while (mask != 0) {
+            counts[offset + Long.numberOfTrailingZeros(mask)] += weight;
+            mask &= mask - 1;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package battleship;
+
+import battleship.metrics.Metrics;
+import battleship.util.Placements;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the bot decisions, shared by all the bots.
+ * <p>
+ * The first shots of every game start from the same few positions, so the weights of the cells computed there by
+ * DensityMap are kept, by what the bot knew (see Key). They depend only on the key, so a bot that finds them here
+ * makes the same choices as if it computed them: the ties are still broken at random. The weights sampled by
+ * MonteCarlo aren't cached, the bot would replay the same draw.
+ * Only the positions with at most maxDepth shots are cached: later ones rarely repeat.
+ * <p>
+ * The cache is an LRU bounded to maxSize entries, split in SEGMENTS segments with their own lock so the bot threads
+ * rarely wait on each other. It can be saved to a file and loaded at startup, see save(Path).
+ */
+class OpeningBook {
+    static final int MAGIC = 0x4253424B; // "BSBK"
+    static final int VERSION = 2;
+    private static final int SEGMENTS = 16;
+
+    /**
+     * What a bot knew before a move: the cells it shot, the hits of the ships not sunk, the cells where no ship can be
+     * (see DensityMap) and the ships not sunk
+     */
+    static final class Key {
+        private final long shotLo, shotHi, hitLo, hitHi, blockedLo, blockedHi;
+        /**
+         * The ships not sunk by length, 3 bits each from length 1
+         */
+        private final int ships;
+
+        Key(long shotLo, long shotHi, long hitLo, long hitHi, long blockedLo, long blockedHi, int ships) {
+            this.shotLo = shotLo;
+            this.shotHi = shotHi;
+            this.hitLo = hitLo;
+            this.hitHi = hitHi;
+            this.blockedLo = blockedLo;
+            this.blockedHi = blockedHi;
+            this.ships = ships;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return shotLo == k.shotLo && shotHi == k.shotHi && hitLo == k.hitLo && hitHi == k.hitHi
+                    && blockedLo == k.blockedLo && blockedHi == k.blockedHi && ships == k.ships;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = shotLo * 31 + shotHi;
+            h = h * 31 + hitLo;
+            h = h * 31 + hitHi;
+            h = h * 31 + blockedLo;
+            h = h * 31 + blockedHi;
+            h = h * 31 + ships;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * Weights of the cells, and the time spent computing them
+     */
+    private static final class Cached {
+        private final double[] weights;
+        private final long nanos;
+
+        Cached(double[] weights, long nanos) {
+            this.weights = weights;
+            this.nanos = nanos;
+        }
+    }
+
+    private final int maxDepth;
+    private final List<Map<Key, Cached>> segments;
+    private final LongAdder hits, misses, savedNanos;
+
+    /**
+     * @param maxSize  Entries kept, the least recently used are evicted
+     * @param maxDepth Shots after which the positions aren't cached
+     * @param metrics  Registry where the hits, the misses and the time saved are counted
+     * @throws IllegalArgumentException If maxSize is less than SEGMENTS, maxDepth is less than zero or metrics is null
+     */
+    OpeningBook(int maxSize, int maxDepth, Metrics metrics) throws IllegalArgumentException {
+        if (maxSize < SEGMENTS || maxDepth < 0) {
+            throw new IllegalArgumentException("maxSize is less than " + SEGMENTS + " or maxDepth is less than zero");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics is null");
+        }
+
+        this.maxDepth = maxDepth;
+        this.segments = new ArrayList<>(SEGMENTS);
+        int segmentSize = maxSize / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments.add(new LinkedHashMap<Key, Cached>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+                    return size() > segmentSize;
+                }
+            });
+        }
+        this.hits = metrics.counter(Metrics.BOOK_HITS);
+        this.misses = metrics.counter(Metrics.BOOK_MISSES);
+        this.savedNanos = metrics.counter(Metrics.BOOK_SAVED_NS);
+        metrics.gauge(Metrics.BOOK_SIZE, this::size);
+        metrics.gauge(Metrics.BOOK_HIT_PERCENT, () -> {
+            long h = hits.sum(), total = h + misses.sum();
+            return total == 0 ? 0 : h * 100 / total;
+        });
+    }
+
+    /**
+     * @param map What the bot knows
+     * @return The key of the position, null if it's too deep to be cached
+     */
+    Key keyOf(DensityMap map) {
+        if (Long.bitCount(map.getShotLo()) + Long.bitCount(map.getShotHi()) > maxDepth)
+            return null;
+
+        int ships = 0;
+        for (int length = 1; length <= Placements.MAX_LENGTH; length++) {
+            ships |= Math.min(map.getRemaining(length), 7) << (3 * (length - 1));
+        }
+        return new Key(map.getShotLo(), map.getShotHi(), map.getHitLo(), map.getHitHi(),
+                map.getBlockedLo(), map.getBlockedHi(), ships);
+    }
+
+    /**
+     * @return The weights of the cells of the position, shared and not to be modified, or null if they aren't cached
+     */
+    double[] get(Key key) {
+        Map<Key, Cached> segment = segmentOf(key);
+        Cached entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+        }
+
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        savedNanos.add(entry.nanos);
+        return entry.weights;
+    }
+
+    /**
+     * @param weights Weights of the cells of the position, not modified afterwards
+     * @param nanos   Time spent computing them
+     */
+    void put(Key key, double[] weights, long nanos) {
+        Map<Key, Cached> segment = segmentOf(key);
+        synchronized (segment) {
+            segment.put(key, new Cached(weights, nanos));
+        }
+    }
+
+    private Map<Key, Cached> segmentOf(Key key) {
+        int h = key.hashCode();
+        return segments.get((h ^ (h >>> 16)) & (SEGMENTS - 1));
+    }
+
+    long size() {
+        long size = 0;
+        for (Map<Key, Cached> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Writes all the entries: MAGIC, VERSION and the number of entries (4 bytes each), then for every entry
+     * the 6 masks of the key (8 bytes each), its ships (4 bytes), the time spent computing it (8 bytes)
+     * and the weights of the cells (NUM_CELLS doubles). Big endian.
+     * The file is replaced only once it's complete
+     *
+     * @param file Where the book is saved
+     * @throws IOException If the file couldn't be written
+     */
+    void save(Path file) throws IOException {
+        List<Map.Entry<Key, Cached>> entries = new ArrayList<>();
+        for (Map<Key, Cached> segment : segments) {
+            synchronized (segment) {
+                entries.addAll(segment.entrySet());
+            }
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<Key, Cached> e : entries) {
+                Key k = e.getKey();
+                for (long mask : new long[]{k.shotLo, k.shotHi, k.hitLo, k.hitHi, k.blockedLo, k.blockedHi}) {
+                    out.writeLong(mask);
+                }
+                out.writeInt(k.ships);
+                out.writeLong(e.getValue().nanos);
+                for (double weight : e.getValue().weights) {
+                    out.writeDouble(weight);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Pre-warms the book with the entries saved by save(Path). They don't count as misses
+     *
+     * @param file A file written by save(Path)
+     * @return The number of entries read
+     * @throws IOException If the file couldn't be read or isn't a book
+     */
+    int load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not an opening book: " + file);
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Key key = new Key(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readInt());
+                long nanos = in.readLong();
+                double[] weights = new double[Board.NUM_CELLS];
+                for (int cell = 0; cell < weights.length; cell++) {
+                    weights[cell] = in.readDouble();
+                }
+                put(key, weights, nanos);
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package battleship;
+
+import static battleship.Game.GRID_SIZE;
+
+/**
+ * Codec of the messages on the game hot path.
+ * <p>
+ * Shots are parsed from any CharSequence without creating substrings,
+ * and the responses that contain a cell are pre-encoded for every cell of the grid.
+ */
+final class Protocol {
+    private static final String SHOOT_PREFIX = "SHOOT_";
+    private static final String[] HIT_AT = new String[Board.NUM_CELLS];
+    private static final String[] OCEAN_AT = new String[Board.NUM_CELLS];
+
+    static {
+        for (int cell = 0; cell < Board.NUM_CELLS; cell++) {
+            HIT_AT[cell] = ("HIT_" + Board.coordinates(cell)).intern();
+            OCEAN_AT[cell] = ("OCEAN_" + Board.coordinates(cell)).intern();
+        }
+    }
+
+    private Protocol() {
+    }
+
+    /**
+     * Parses a "SHOOT_XXYY" message
+     *
+     * @param msg The message received
+     * @return The index of the cell shot, or -1 if the message isn't a shot or the coordinates are invalid
+     */
+    static int parseShot(CharSequence msg) {
+        if (msg.length() != SHOOT_PREFIX.length() + 4 || !isShot(msg))
+            return -1;
+
+        return parseCell(msg, SHOOT_PREFIX.length());
+    }
+
+    /**
+     * Parses "XXYY" coordinates
+     *
+     * @param s     The text that contains them
+     * @param index Index of the first digit
+     * @return The index of the cell, or -1 if the coordinates aren't two numbers from 1 to GRID_SIZE
+     */
+    static int parseCell(CharSequence s, int index) {
+        int x = parseTwoDigits(s, index);
+        int y = parseTwoDigits(s, index + 2);
+        if (x < 1 || x > GRID_SIZE || y < 1 || y > GRID_SIZE)
+            return -1;
+
+        return Board.cell(x, y);
+    }
+
+    /**
+     * @return true if msg starts with "SHOOT_"
+     */
+    private static boolean isShot(CharSequence msg) {
+        if (msg.length() < SHOOT_PREFIX.length())
+            return false;
+
+        for (int i = 0; i < SHOOT_PREFIX.length(); i++) {
+            if (msg.charAt(i) != SHOOT_PREFIX.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The "HIT_XXYY" message of the cell
+     */
+    static String hitAt(int cell) {
+        return HIT_AT[cell];
+    }
+
+    /**
+     * @return The "OCEAN_XXYY" message of the cell
+     */
+    static String oceanAt(int cell) {
+        return OCEAN_AT[cell];
+    }
+
+    /**
+     * @return The 2 digits number at index, or -1 if they aren't digits
+     */
+    private static int parseTwoDigits(CharSequence s, int index) {
+        int d1 = s.charAt(index) - '0';
+        int d0 = s.charAt(index + 1) - '0';
+        if (d1 < 0 || d1 > 9 || d0 < 0 || d0 > 9)
+            return -1;
+
+        return d1 * 10 + d0;
+    }
+}
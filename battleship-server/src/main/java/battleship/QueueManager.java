@@ -1,35 +1,85 @@
 package battleship;
 
-import battleship.heartbeat.HeartbeatClient;
+import battleship.metrics.Metrics;
+import battleship.net.Connection;
+import battleship.util.Histogram;
 
 import java.lang.management.ManagementFactory;
-import java.util.LinkedList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Matchmaking queue.
+ * <p>
+ * At most one player is waiting at any time: a new player is matched as soon as it's added if another one is waiting,
+ * otherwise it takes the waiting slot. The slot is updated with compare-and-set, so add() can be called by any thread
+ * without locks. A waiting player that disconnected is dropped by the next add(), or by the periodic sweep.
+ * A player that waited longer than the bot delay is matched with a Bot by the sweep.
+ */
 public class QueueManager {
-    private static final int QUEUE_MANAGER_DELAY = 2000; // ms to wait before checking again when <2 players in queue
+    private static final int QUEUE_MANAGER_DELAY = 2000; // default ms between checks of the waiting player connection
 
-    private LinkedList<HeartbeatClient> queue;
+    /**
+     * The player waiting for an opponent, null if none
+     */
+    private final AtomicReference<Waiting> waiting = new AtomicReference<>();
+    /**
+     * Milliseconds between checks of the waiting player connection
+     */
+    private volatile long msSweepDelay = QUEUE_MANAGER_DELAY;
+    /**
+     * Milliseconds after which the waiting player plays against a bot, 0 to wait for a player
+     */
+    private volatile long msBotDelay = 0;
     private ScheduledExecutorService queueManager;
     private ScheduledExecutorService statusPrinter;
     private GamesManager gamesManager;
+    private Metrics metrics;
+    private LongAdder matches;
+    private Histogram queueWait;
 
     /**
-     * Starts the queue manager task that joins 2 players in a match.
-     * Queue has no size limit other than system resources limitation.
+     * Starts the queue manager task that drops the waiting player when it disconnects.
      *
      * @throws RejectedExecutionException If there's an error with the queue maintainer task
      */
     public QueueManager() throws RejectedExecutionException {
-        this.queue = new LinkedList<>();
-        this.gamesManager = new GamesManager();
+        this(new GamesManager());
+    }
+
+    /**
+     * Starts the queue manager task that drops the waiting player when it disconnects.
+     *
+     * @param gamesManager The manager that starts the matched games
+     * @throws RejectedExecutionException If there's an error with the queue maintainer task
+     */
+    public QueueManager(GamesManager gamesManager) throws RejectedExecutionException {
+        this(gamesManager, Metrics.DETACHED);
+    }
+
+    /**
+     * Starts the queue manager task that drops the waiting player when it disconnects,
+     * and the task that prints the metrics every 10 seconds.
+     *
+     * @param gamesManager The manager that starts the matched games
+     * @param metrics      Registry of the server metrics
+     * @throws RejectedExecutionException If there's an error with the queue maintainer task
+     */
+    public QueueManager(GamesManager gamesManager, Metrics metrics) throws RejectedExecutionException {
+        this.gamesManager = gamesManager;
+        this.metrics = metrics;
+        this.matches = metrics.counter(Metrics.MATCHES);
+        this.queueWait = metrics.histogram(Metrics.QUEUE_WAIT_MS);
+        metrics.gauge(Metrics.QUEUE_LENGTH, this::length);
+        metrics.gauge("threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
 
         try {
             queueManager = Executors.newSingleThreadScheduledExecutor();
-            queueManager.scheduleWithFixedDelay(playerMatcher, 1000, QUEUE_MANAGER_DELAY, TimeUnit.MILLISECONDS);
+            scheduleSweep(1000);
             statusPrinter = Executors.newSingleThreadScheduledExecutor();
             statusPrinter.scheduleWithFixedDelay(printStatus, 1, 10, TimeUnit.SECONDS);
         } catch (RejectedExecutionException e) {
@@ -37,52 +87,126 @@ public class QueueManager {
         }
     }
 
-    private Runnable playerMatcher = () -> {
-        // check to update player in queue when there's only 1 player
-        if (length() == 1) {
-            if (queue.getFirst().isClosed())
-                queue.pop();
-        }
-        else {
-            while (length() >= 2) {
-                // With large amount of requests this may slow down the queueManager since it's run with one thread and create() is blocking
-                HeartbeatClient ps1 = queue.pop();
-                if (ps1.isClosed())
-                    continue;
-
-                HeartbeatClient ps2 = queue.pop();
-                if (ps2.isClosed()) {
-                    queue.push(ps1);
-                    continue;
-                }
-
-                ps1.println("OPPONENT_FOUND");
-                ps2.println("OPPONENT_FOUND");
-
-                gamesManager.create(ps1, ps2);
-            }
+    private Runnable closedPlayerSweeper = () -> {
+        // check to update player in queue when nobody else joined
+        Waiting w = waiting.get();
+        if (w != null && w.player.isClosed()) {
+            waiting.compareAndSet(w, null);
+        } else if (w != null && msBotDelay > 0 && System.currentTimeMillis() - w.since >= msBotDelay && waiting.compareAndSet(w, null)) {
+            queueWait.record(System.currentTimeMillis() - w.since);
+            gamesManager.startWithBot(w.player);
         }
+
+        if (!queueManager.isShutdown())
+            scheduleSweep(msSweepDelay);
     };
 
+    /**
+     * The sweeper schedules itself after every run, so that a new delay is used from the next check
+     */
+    private void scheduleSweep(long msDelay) {
+        queueManager.schedule(closedPlayerSweeper, msDelay, TimeUnit.MILLISECONDS);
+    }
+
     private Runnable printStatus = () -> {
-        System.out.println("[*] Player in queue: " + length() + "; n. threads: " + ManagementFactory.getThreadMXBean().getThreadCount());
+        System.out.println(metrics);
     };
 
     /**
-     * Adds the passed socket to the queue
+     * Adds the passed socket to the queue, and starts a game if another player was waiting
      *
      * @param player Player socket
      * @throws IllegalAccessException If socket is null
      */
-    public void add(HeartbeatClient player) throws IllegalAccessException {
+    public void add(Connection player) throws IllegalAccessException {
         if (player == null)
             throw new IllegalAccessException("Player socket is null");
 
-        queue.add(player);
         player.println("OPPONENT_WAIT");
+        Waiting w = new Waiting(player);
+
+        while (true) {
+            Waiting opponent = waiting.get();
+
+            if (opponent == null) {
+                if (waiting.compareAndSet(null, w))
+                    return;
+            } else if (opponent.player.isClosed()) {
+                waiting.compareAndSet(opponent, null);
+            } else if (waiting.compareAndSet(opponent, null)) {
+                match(opponent, player);
+                return;
+            }
+        }
     }
 
+    /**
+     * Hands off 2 players to the games bootstrap stage. The one that waited has the first turn
+     */
+    private void match(Waiting opponent, Connection player) {
+        matches.increment();
+        queueWait.record(System.currentTimeMillis() - opponent.since);
+        gamesManager.start(opponent.player, player);
+    }
+
+    /**
+     * @return Number of players waiting for an opponent, 0 or 1
+     */
     public int length() {
-        return queue.size();
+        return waiting.get() == null ? 0 : 1;
+    }
+
+    public long getMsSweepDelay() {
+        return msSweepDelay;
+    }
+
+    /**
+     * @param msSweepDelay Milliseconds between checks of the waiting player connection, used from the next check
+     * @throws IllegalArgumentException If msSweepDelay is less or equal to zero
+     */
+    public void setMsSweepDelay(long msSweepDelay) throws IllegalArgumentException {
+        if (msSweepDelay <= 0) {
+            throw new IllegalArgumentException("msSweepDelay is less or equal to zero");
+        }
+
+        this.msSweepDelay = msSweepDelay;
+    }
+
+    public long getMsBotDelay() {
+        return msBotDelay;
+    }
+
+    /**
+     * @param msBotDelay Milliseconds after which the waiting player plays against a bot, 0 to wait for a player.
+     *                   It's checked by the sweep, so the player may wait up to msSweepDelay more
+     * @throws IllegalArgumentException If msBotDelay is less than zero
+     */
+    public void setMsBotDelay(long msBotDelay) throws IllegalArgumentException {
+        if (msBotDelay < 0) {
+            throw new IllegalArgumentException("msBotDelay is less than zero");
+        }
+
+        this.msBotDelay = msBotDelay;
+    }
+
+    /**
+     * Stops the scheduled tasks. Players already waiting are not disconnected
+     */
+    public void shutdown() {
+        queueManager.shutdownNow();
+        statusPrinter.shutdownNow();
+    }
+
+    /**
+     * A player in the waiting slot, with the time it was added
+     */
+    private static class Waiting {
+        private final Connection player;
+        private final long since;
+
+        private Waiting(Connection player) {
+            this.player = player;
+            this.since = System.currentTimeMillis();
+        }
     }
 }
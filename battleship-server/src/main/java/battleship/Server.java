@@ -2,34 +2,137 @@ package battleship;
 
 import battleship.heartbeat.HeartbeatClient;
 import battleship.heartbeat.HeartbeatManager;
+import battleship.journal.Journal;
+import battleship.journal.RecoveredGame;
+import battleship.journal.Recovery;
+import battleship.metrics.Metrics;
+import battleship.net.Connection;
+import battleship.net.NioClient;
+import battleship.net.NioServer;
+import battleship.util.Placements;
 
+import javax.management.JMException;
 import java.io.IOException;
 import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * Game server.
+ * <p>
+ * By default every player is served by its own threads.
+ * With the "--virtual" argument, those are virtual threads (JDK 21+).
+ * With the "--nio [nLoops]" argument, all the players are served by nLoops event loop threads (default: number of cores).
+ * The other settings are read from the "--config file" properties file and the "--key=value" arguments, see ServerConfig.
+ * <p>
+ * New sockets go through the AdmissionController: over the caps they're parked, or refused with SERVER_FULL.
+ * The server state and its settings are exposed through JMX, see ServerControlMBean.
+ * The games are recorded in the journal directory, see Journal. After a restart, the games that were running are
+ * recovered from it and wait for their players to resume them, see SessionManager.
+ */
 public class Server {
-    private static final int GAMESERVER_PORT = 12345;
-    private static final int MAX_CONNECTIONS = 50;
+    private static final byte[] SERVER_FULL = "SERVER_FULL\n".getBytes(StandardCharsets.US_ASCII);
 
     public static void main(String[] args) {
-        //TODO: Read configs from external file (like threadPoolSize)
+        ServerConfig config;
         try {
-            QueueManager queueManager = new QueueManager();
-            HeartbeatManager heartbeatManager = new HeartbeatManager(2000);
+            config = ServerConfig.load(args);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("[!] Invalid configuration: " + e.getMessage());
+            return;
+        }
 
-            // Socket listener
-            ServerSocket listener = new ServerSocket(GAMESERVER_PORT);
-            System.out.println("[*] Listening for connections on port: " + GAMESERVER_PORT);
+        try {
+            int port = config.getPort();
+            boolean virtual = config.getMode().equals("virtual");
+            long initialTimeoutOffset = config.getInitialTimeoutOffset();
+            // players and input readers of thread-per-player mode
+            ExecutorService threads = Threads.newPerTaskExecutor(virtual);
 
-            while (true) {
-                try {
-                    HeartbeatClient c = new HeartbeatClient(listener.accept(), 1000);
-                    System.out.println(String.format("[*] '%s' connected", c.getSocketInfo()));
-                    heartbeatManager.add(c);
-                    queueManager.add(c);
-                } catch (IllegalAccessException e) {
-                    System.out.println("[!] The listener returned an empty socket");
-                    e.printStackTrace();
+            Metrics metrics = new Metrics();
+            System.out.println(String.format("[*] Ship placement tables built in %d us", Placements.getInitNanos() / 1000));
+            long recoveryStart = System.currentTimeMillis();
+            Collection<RecoveredGame> recovered = readJournal(config);
+            Journal journal = openJournal(config, metrics);
+            GamesManager gamesManager = new GamesManager(threads, metrics, config.getBootstrapThreads(), journal, config.getBotThreads());
+            gamesManager.setBotTier(config.getBotTier());
+            gamesManager.setBotBudget(config.getBotMoveBudget(), config.getBotSamples());
+            gamesManager.setOpeningBook(openBook(config, metrics));
+            QueueManager queueManager = new QueueManager(gamesManager, metrics);
+            queueManager.setMsSweepDelay(config.getMatcherDelay());
+            queueManager.setMsBotDelay(config.getBotDelay());
+            HeartbeatManager heartbeatManager = new HeartbeatManager(config.getDisconnectTimeout());
+            SessionManager sessions = new SessionManager(gamesManager, queueManager, config.getResumeWindow(),
+                    config.getGraceWindow(), metrics);
+            gamesManager.setSessions(sessions);
+            if (!recovered.isEmpty()) {
+                sessions.recover(recovered);
+                System.out.println(String.format("[*] Recovered %d games in %d ms", recovered.size(), System.currentTimeMillis() - recoveryStart));
+            }
+            AdmissionController admission = new AdmissionController(config.getMaxConnections(), config.getMaxConnectionsPerAddress(),
+                    config.getMaxGames(), config.getAdmissionBacklog(), config.getMaxParkTime(), metrics);
+
+            // settings that can change without a restart
+            config.watch(c -> {
+                heartbeatManager.setMsDisconnectTimeout(c.getDisconnectTimeout());
+                queueManager.setMsSweepDelay(c.getMatcherDelay());
+                queueManager.setMsBotDelay(c.getBotDelay());
+                gamesManager.setBotTier(c.getBotTier());
+                gamesManager.setBotBudget(c.getBotMoveBudget(), c.getBotSamples());
+                admission.setMaxConnections(c.getMaxConnections());
+                admission.setMaxConnectionsPerAddress(c.getMaxConnectionsPerAddress());
+                admission.setMaxGames(c.getMaxGames());
+                System.out.println("[*] Configuration reloaded");
+            });
+
+            ServerControl control = new ServerControl(queueManager, gamesManager, heartbeatManager, admission, metrics);
+            try {
+                control.register();
+            } catch (JMException e) {
+                System.out.println("[!] An exception was thrown while registering the server MBean");
+                e.printStackTrace();
+            }
+
+            if (config.getMode().equals("nio")) {
+                int nLoops = config.getNioLoops();
+
+                NioServer listener = new NioServer(nLoops, initialTimeoutOffset);
+                System.out.println("[*] Listening for connections on port: " + port + " with " + nLoops + " event loops");
+                listener.listen(port, channel -> admission.admit(channel.socket().getInetAddress(), () -> {
+                    NioClient c = listener.serve(channel, sessions::greet);
+                    if (c != null)
+                        serve(c, heartbeatManager, metrics);
+                    return c;
+                }, () -> refuse(channel.socket())));
+            } else {
+                // Socket listener
+                ServerSocket listener = new ServerSocket(port);
+                System.out.println("[*] Listening for connections on port: " + port + (virtual && Threads.isVirtualSupported() ? " with virtual threads" : ""));
+
+                while (true) {
+                    Socket socket = listener.accept();
+                    admission.admit(socket.getInetAddress(), () -> {
+                        try {
+                            HeartbeatClient c = new HeartbeatClient(socket, initialTimeoutOffset, threads, sessions::greet);
+                            serve(c, heartbeatManager, metrics);
+                            return c;
+                        } catch (IOException e) {
+                            System.out.println("[!] An exception was thrown while accepting a connection");
+                            e.printStackTrace();
+                            try {
+                                socket.close();
+                            } catch (IOException ignore) {
+                            }
+                            return null;
+                        }
+                    }, () -> refuse(socket));
                 }
             }
         } catch (IOException e) {
@@ -41,4 +144,102 @@ public class Server {
         }
     }
 
+    /**
+     * Reads the games that were running when the server stopped, before the journal is opened
+     *
+     * @return The games to recover, empty if the journal is disabled or couldn't be read
+     */
+    private static Collection<RecoveredGame> readJournal(ServerConfig config) {
+        if (config.getJournalDir().isEmpty())
+            return Collections.emptyList();
+
+        try {
+            return Recovery.read(Paths.get(config.getJournalDir()));
+        } catch (IOException e) {
+            System.out.println("[!] An exception was thrown while reading the journal, no game is recovered");
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Opens the journal of the games, and closes it when the JVM exits so the pending records are written
+     *
+     * @return The journal, or Journal.DISABLED if it's disabled or couldn't be opened
+     */
+    private static Journal openJournal(ServerConfig config, Metrics metrics) {
+        if (config.getJournalDir().isEmpty())
+            return Journal.DISABLED;
+
+        try {
+            Journal journal = new Journal(Paths.get(config.getJournalDir()), config.getJournalSegmentSize(),
+                    config.getSnapshotInterval(), metrics);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    journal.close();
+                } catch (InterruptedException ignore) {
+                }
+            }));
+            System.out.println("[*] Recording the games in: " + config.getJournalDir());
+            return journal;
+        } catch (IOException e) {
+            System.out.println("[!] An exception was thrown while opening the journal, the games won't be recorded");
+            e.printStackTrace();
+            return Journal.DISABLED;
+        }
+    }
+
+    /**
+     * Creates the opening book of the bots, pre-warmed from its file, and saves it there when the JVM exits
+     *
+     * @return The book, or null if it's disabled
+     */
+    private static OpeningBook openBook(ServerConfig config, Metrics metrics) {
+        if (config.getBookSize() == 0)
+            return null;
+
+        OpeningBook book = new OpeningBook(config.getBookSize(), config.getBookDepth(), metrics);
+        if (config.getBookFile().isEmpty())
+            return book;
+
+        Path file = Paths.get(config.getBookFile());
+        if (Files.exists(file)) {
+            try {
+                System.out.println("[*] Loaded " + book.load(file) + " opening book entries from: " + file);
+            } catch (IOException e) {
+                System.out.println("[!] An exception was thrown while loading the opening book, it starts empty");
+                e.printStackTrace();
+            }
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                book.save(file);
+            } catch (IOException e) {
+                System.out.println("[!] An exception was thrown while saving the opening book");
+                e.printStackTrace();
+            }
+        }));
+        return book;
+    }
+
+    /**
+     * Puts a new client under the heartbeat monitor. It joins the matchmaking queue, or resumes its game,
+     * with its first message (see SessionManager)
+     */
+    private static void serve(Connection c, HeartbeatManager heartbeatManager, Metrics metrics) {
+        System.out.println(String.format("[*] '%s' connected", c.getSocketInfo()));
+        metrics.counter(Metrics.CONNECTIONS).increment();
+        heartbeatManager.add(c);
+    }
+
+    /**
+     * Sends SERVER_FULL and closes a socket that wasn't served. The protocol isn't chosen yet, so it's always sent as text
+     */
+    private static void refuse(Socket socket) {
+        System.out.println(String.format("[!] '%s' refused, server full", socket.getRemoteSocketAddress()));
+        try (Socket s = socket) {
+            s.getOutputStream().write(SERVER_FULL);
+        } catch (IOException ignore) {
+        }
+    }
 }
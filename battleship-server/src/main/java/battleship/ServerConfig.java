@@ -0,0 +1,389 @@
+package battleship;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Server settings, read from the defaults, then from a properties file, then from the command line.
+ * <p>
+ * Command line: "--config file", "--key=value" for any key, and the shortcuts "--virtual" and "--nio [nLoops]".
+ * <p>
+ * The file can be watched for changes: a new configuration is loaded every time it's modified.
+ * Only the settings in RUNTIME_KEYS are applied by the server without a restart.
+ */
+class ServerConfig {
+    static final String PORT = "port";
+    /**
+     * threads, virtual or nio
+     */
+    static final String MODE = "mode";
+    static final String NIO_LOOPS = "nio.loops";
+    static final String BOOTSTRAP_THREADS = "bootstrap.threads";
+    static final String DISCONNECT_TIMEOUT = "heartbeat.timeout";
+    static final String INITIAL_TIMEOUT_OFFSET = "heartbeat.initialOffset";
+    static final String MATCHER_DELAY = "matcher.delay";
+    /**
+     * ms after which the waiting player plays against a bot, 0 to wait for a player
+     */
+    static final String BOT_DELAY = "bot.delay";
+    static final String BOT_THREADS = "bot.threads";
+    /**
+     * basic or sampling
+     */
+    static final String BOT_TIER = "bot.tier";
+    /**
+     * ms and fleets sampled after which a move of a sampling bot ends
+     */
+    static final String BOT_MOVE_BUDGET = "bot.moveBudget";
+    static final String BOT_SAMPLES = "bot.samples";
+    /**
+     * Positions kept in the opening book of the bots, 0 to disable it, and shots after which they aren't cached
+     */
+    static final String BOOK_SIZE = "bot.book.size";
+    static final String BOOK_DEPTH = "bot.book.depth";
+    /**
+     * File the book is loaded from at startup and saved to at shutdown, empty to keep it in memory only
+     */
+    static final String BOOK_FILE = "bot.book.file";
+    static final String MAX_CONNECTIONS = "admission.maxConnections";
+    static final String MAX_CONNECTIONS_PER_ADDRESS = "admission.maxConnectionsPerAddress";
+    static final String MAX_GAMES = "admission.maxGames";
+    static final String ADMISSION_BACKLOG = "admission.backlog";
+    static final String MAX_PARK_TIME = "admission.maxParkTime";
+    /**
+     * Directory of the journal segments, empty to disable the journal
+     */
+    static final String JOURNAL_DIR = "journal.dir";
+    static final String JOURNAL_SEGMENT_SIZE = "journal.segmentSize";
+    static final String SNAPSHOT_INTERVAL = "journal.snapshotInterval";
+    /**
+     * ms given to the players of the games recovered after a restart to resume them
+     */
+    static final String RESUME_WINDOW = "recovery.resumeWindow";
+    /**
+     * ms given to a player that lost its connection during a game to reconnect, 0 to end the game immediately
+     */
+    static final String GRACE_WINDOW = "session.graceWindow";
+
+    private static final List<String> ALL_KEYS = Arrays.asList(PORT, MODE, NIO_LOOPS, BOOTSTRAP_THREADS,
+            DISCONNECT_TIMEOUT, INITIAL_TIMEOUT_OFFSET, MATCHER_DELAY, BOT_DELAY, BOT_THREADS,
+            BOT_TIER, BOT_MOVE_BUDGET, BOT_SAMPLES, BOOK_SIZE, BOOK_DEPTH, BOOK_FILE,
+            MAX_CONNECTIONS, MAX_CONNECTIONS_PER_ADDRESS, MAX_GAMES, ADMISSION_BACKLOG, MAX_PARK_TIME,
+            JOURNAL_DIR, JOURNAL_SEGMENT_SIZE, SNAPSHOT_INTERVAL, RESUME_WINDOW, GRACE_WINDOW);
+
+    /**
+     * Settings applied while the server is running
+     */
+    static final List<String> RUNTIME_KEYS = Arrays.asList(DISCONNECT_TIMEOUT, MATCHER_DELAY, BOT_DELAY,
+            BOT_TIER, BOT_MOVE_BUDGET, BOT_SAMPLES, MAX_CONNECTIONS, MAX_CONNECTIONS_PER_ADDRESS, MAX_GAMES);
+
+    private static final int RELOAD_DELAY = 2000; // ms between checks of the file modification time
+
+    private final Path file;
+    /**
+     * Settings from the command line, they win over the file ones
+     */
+    private final Properties overrides;
+    private final Properties values;
+
+    private ServerConfig(Path file, Properties overrides) throws IOException, IllegalArgumentException {
+        this.file = file;
+        this.overrides = overrides;
+        this.values = new Properties();
+
+        values.setProperty(PORT, "12345");
+        values.setProperty(MODE, "threads");
+        values.setProperty(NIO_LOOPS, String.valueOf(Runtime.getRuntime().availableProcessors()));
+        values.setProperty(BOOTSTRAP_THREADS, "4");
+        values.setProperty(DISCONNECT_TIMEOUT, "2000");
+        values.setProperty(INITIAL_TIMEOUT_OFFSET, "1000");
+        values.setProperty(MATCHER_DELAY, "2000");
+        values.setProperty(BOT_DELAY, "10000");
+        // half the cores, the others are left to the players
+        values.setProperty(BOT_THREADS, String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+        values.setProperty(BOT_TIER, "basic");
+        values.setProperty(BOT_MOVE_BUDGET, "50");
+        values.setProperty(BOT_SAMPLES, "2000");
+        values.setProperty(BOOK_SIZE, "10000");
+        values.setProperty(BOOK_DEPTH, "10");
+        values.setProperty(BOOK_FILE, "");
+        values.setProperty(MAX_CONNECTIONS, "1000");
+        values.setProperty(MAX_CONNECTIONS_PER_ADDRESS, "256");
+        values.setProperty(MAX_GAMES, "500");
+        values.setProperty(ADMISSION_BACKLOG, "256");
+        values.setProperty(MAX_PARK_TIME, "10000");
+        values.setProperty(JOURNAL_DIR, "journal");
+        values.setProperty(JOURNAL_SEGMENT_SIZE, String.valueOf(64 * 1024 * 1024));
+        values.setProperty(SNAPSHOT_INTERVAL, "10000");
+        values.setProperty(RESUME_WINDOW, "60000");
+        values.setProperty(GRACE_WINDOW, "10000");
+
+        if (file != null) {
+            try (InputStream in = Files.newInputStream(file)) {
+                values.load(in);
+            }
+        }
+        values.putAll(overrides);
+
+        validate();
+    }
+
+    /**
+     * Reads the configuration
+     *
+     * @param args Command line arguments
+     * @return The configuration
+     * @throws IOException              If the configuration file couldn't be read
+     * @throws IllegalArgumentException If an argument or a setting is invalid
+     */
+    static ServerConfig load(String[] args) throws IOException, IllegalArgumentException {
+        Path file = null;
+        Properties overrides = new Properties();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--config") && i + 1 < args.length) {
+                file = Paths.get(args[++i]);
+            } else if (arg.equals("--virtual")) {
+                overrides.setProperty(MODE, "virtual");
+            } else if (arg.equals("--nio")) {
+                overrides.setProperty(MODE, "nio");
+                if (i + 1 < args.length && !args[i + 1].startsWith("--"))
+                    overrides.setProperty(NIO_LOOPS, args[++i]);
+            } else if (arg.startsWith("--") && arg.contains("=")) {
+                overrides.setProperty(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                throw new IllegalArgumentException("Invalid argument: " + arg);
+            }
+        }
+
+        return new ServerConfig(file, overrides);
+    }
+
+    /**
+     * Checks the file modification time every RELOAD_DELAY ms, and loads the new configuration when it changes.
+     * Invalid files are reported and ignored. Does nothing if there's no configuration file
+     *
+     * @param onReload Called with every new valid configuration, on the watcher thread
+     */
+    void watch(Consumer<ServerConfig> onReload) {
+        if (file == null)
+            return;
+
+        ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "config-watcher");
+            t.setDaemon(true);
+            return t;
+        });
+
+        watcher.scheduleWithFixedDelay(new Runnable() {
+            private ServerConfig current = ServerConfig.this;
+            private long lastModified = lastModified();
+
+            @Override
+            public void run() {
+                long modified = lastModified();
+                if (modified == lastModified)
+                    return;
+                lastModified = modified;
+
+                try {
+                    ServerConfig next = new ServerConfig(file, overrides);
+                    for (String key : next.values.stringPropertyNames()) {
+                        if (!RUNTIME_KEYS.contains(key) && !Objects.equals(current.values.getProperty(key), next.values.getProperty(key)))
+                            System.out.println(String.format("[!] '%s' changed, it will be applied at the next restart", key));
+                    }
+                    current = next;
+                    onReload.accept(next);
+                } catch (IOException | IllegalArgumentException e) {
+                    System.out.println("[!] Invalid configuration file, the current one is kept: " + e.getMessage());
+                }
+            }
+        }, RELOAD_DELAY, RELOAD_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    private long lastModified() {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void validate() throws IllegalArgumentException {
+        for (String key : values.stringPropertyNames()) {
+            if (!ALL_KEYS.contains(key))
+                throw new IllegalArgumentException("Unknown setting: " + key);
+        }
+
+        String mode = getMode();
+        if (!mode.equals("threads") && !mode.equals("virtual") && !mode.equals("nio"))
+            throw new IllegalArgumentException("Invalid " + MODE + ": " + mode);
+
+        if (getPort() < 0 || getPort() > 65535)
+            throw new IllegalArgumentException("Invalid " + PORT + ": " + getPort());
+
+        getPositive(NIO_LOOPS);
+        getPositive(BOOTSTRAP_THREADS);
+        getPositive(DISCONNECT_TIMEOUT);
+        getPositive(MATCHER_DELAY);
+        getPositive(BOT_THREADS);
+        getBotTier();
+        getPositive(BOT_MOVE_BUDGET);
+        getPositive(BOT_SAMPLES);
+        if (getBookSize() != 0 && getBookSize() < 16)
+            throw new IllegalArgumentException("Invalid " + BOOK_SIZE + ": " + getBookSize());
+        getPositive(MAX_CONNECTIONS);
+        getPositive(MAX_CONNECTIONS_PER_ADDRESS);
+        getPositive(MAX_GAMES);
+        getPositive(SNAPSHOT_INTERVAL);
+        getPositive(RESUME_WINDOW);
+        if (getJournalSegmentSize() < 1024)
+            throw new IllegalArgumentException("Invalid " + JOURNAL_SEGMENT_SIZE + ": " + getJournalSegmentSize());
+        if (getInitialTimeoutOffset() < 0 || getAdmissionBacklog() < 0 || getMaxParkTime() < 0 || getGraceWindow() < 0 || getBotDelay() < 0
+                || getBookDepth() < 0)
+            throw new IllegalArgumentException("Invalid negative setting");
+    }
+
+    private long getLong(String key) throws IllegalArgumentException {
+        String value = values.getProperty(key).trim();
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        }
+    }
+
+    private int getInt(String key) throws IllegalArgumentException {
+        long value = getLong(key);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        return (int) value;
+    }
+
+    private int getPositive(String key) throws IllegalArgumentException {
+        int value = getInt(key);
+        if (value <= 0)
+            throw new IllegalArgumentException("Invalid " + key + ": " + value);
+        return value;
+    }
+
+    int getPort() {
+        return getInt(PORT);
+    }
+
+    String getMode() {
+        return values.getProperty(MODE).trim();
+    }
+
+    int getNioLoops() {
+        return getInt(NIO_LOOPS);
+    }
+
+    int getBootstrapThreads() {
+        return getInt(BOOTSTRAP_THREADS);
+    }
+
+    long getDisconnectTimeout() {
+        return getLong(DISCONNECT_TIMEOUT);
+    }
+
+    long getInitialTimeoutOffset() {
+        return getLong(INITIAL_TIMEOUT_OFFSET);
+    }
+
+    long getMatcherDelay() {
+        return getLong(MATCHER_DELAY);
+    }
+
+    long getBotDelay() {
+        return getLong(BOT_DELAY);
+    }
+
+    int getBotThreads() {
+        return getInt(BOT_THREADS);
+    }
+
+    /**
+     * @throws IllegalArgumentException If the setting isn't basic or sampling
+     */
+    Bot.Tier getBotTier() throws IllegalArgumentException {
+        String value = values.getProperty(BOT_TIER).trim();
+        for (Bot.Tier tier : Bot.Tier.values()) {
+            if (tier.name().equalsIgnoreCase(value))
+                return tier;
+        }
+        throw new IllegalArgumentException("Invalid " + BOT_TIER + ": " + value);
+    }
+
+    long getBotMoveBudget() {
+        return getLong(BOT_MOVE_BUDGET);
+    }
+
+    int getBotSamples() {
+        return getInt(BOT_SAMPLES);
+    }
+
+    int getBookSize() {
+        return getInt(BOOK_SIZE);
+    }
+
+    int getBookDepth() {
+        return getInt(BOOK_DEPTH);
+    }
+
+    String getBookFile() {
+        return values.getProperty(BOOK_FILE).trim();
+    }
+
+    int getMaxConnections() {
+        return getInt(MAX_CONNECTIONS);
+    }
+
+    int getMaxConnectionsPerAddress() {
+        return getInt(MAX_CONNECTIONS_PER_ADDRESS);
+    }
+
+    int getMaxGames() {
+        return getInt(MAX_GAMES);
+    }
+
+    int getAdmissionBacklog() {
+        return getInt(ADMISSION_BACKLOG);
+    }
+
+    long getMaxParkTime() {
+        return getLong(MAX_PARK_TIME);
+    }
+
+    String getJournalDir() {
+        return values.getProperty(JOURNAL_DIR).trim();
+    }
+
+    int getJournalSegmentSize() {
+        return getInt(JOURNAL_SEGMENT_SIZE);
+    }
+
+    long getSnapshotInterval() {
+        return getLong(SNAPSHOT_INTERVAL);
+    }
+
+    long getResumeWindow() {
+        return getLong(RESUME_WINDOW);
+    }
+
+    long getGraceWindow() {
+        return getLong(GRACE_WINDOW);
+    }
+}
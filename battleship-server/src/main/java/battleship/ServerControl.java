@@ -0,0 +1,156 @@
+package battleship;
+
+import battleship.heartbeat.HeartbeatManager;
+import battleship.metrics.Metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Exposes the server components through JMX, and holds the settings that can be changed at runtime
+ */
+public class ServerControl implements ServerControlMBean {
+    private final QueueManager queueManager;
+    private final GamesManager gamesManager;
+    private final HeartbeatManager heartbeatManager;
+    private final AdmissionController admission;
+    private final Metrics metrics;
+
+    /**
+     * @param queueManager     The matchmaking queue
+     * @param gamesManager     The manager that starts the games
+     * @param heartbeatManager The heartbeat monitor
+     * @param admission        The admission controller of the new sockets
+     * @param metrics          Registry of the server metrics
+     * @throws IllegalArgumentException If a component is null
+     */
+    ServerControl(QueueManager queueManager, GamesManager gamesManager, HeartbeatManager heartbeatManager,
+                  AdmissionController admission, Metrics metrics) throws IllegalArgumentException {
+        if (queueManager == null || gamesManager == null || heartbeatManager == null || admission == null || metrics == null) {
+            throw new IllegalArgumentException("A server component is null");
+        }
+
+        this.queueManager = queueManager;
+        this.gamesManager = gamesManager;
+        this.heartbeatManager = heartbeatManager;
+        this.admission = admission;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Registers this object in the platform MBean server
+     *
+     * @throws JMException If the MBean couldn't be registered
+     */
+    void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("battleship:type=Server"));
+    }
+
+    @Override
+    public int getQueueLength() {
+        return queueManager.length();
+    }
+
+    @Override
+    public int getBootstrapQueueLength() {
+        return gamesManager.getBootstrapQueueLength();
+    }
+
+    @Override
+    public int getOpenConnections() {
+        return admission.getOpenConnections();
+    }
+
+    @Override
+    public int getBacklogLength() {
+        return admission.getBacklogLength();
+    }
+
+    @Override
+    public int getHeartbeatClients() {
+        return heartbeatManager.getClientsCount();
+    }
+
+    @Override
+    public long getActiveGames() {
+        return metrics.getGauge(Metrics.ACTIVE_GAMES);
+    }
+
+    @Override
+    public int getGamesPoolThreads() {
+        return gamesManager.getGamesPoolSize();
+    }
+
+    @Override
+    public long getDisconnectTimeout() {
+        return heartbeatManager.getMsDisconnectTimeout();
+    }
+
+    @Override
+    public void setDisconnectTimeout(long ms) {
+        heartbeatManager.setMsDisconnectTimeout(ms);
+    }
+
+    @Override
+    public long getMatcherDelay() {
+        return queueManager.getMsSweepDelay();
+    }
+
+    @Override
+    public void setMatcherDelay(long ms) {
+        queueManager.setMsSweepDelay(ms);
+    }
+
+    @Override
+    public long getBotDelay() {
+        return queueManager.getMsBotDelay();
+    }
+
+    @Override
+    public void setBotDelay(long ms) {
+        queueManager.setMsBotDelay(ms);
+    }
+
+    @Override
+    public String getBotTier() {
+        return gamesManager.getBotTier().name().toLowerCase();
+    }
+
+    @Override
+    public void setBotTier(String tier) {
+        if (tier == null)
+            throw new IllegalArgumentException("tier is null");
+        gamesManager.setBotTier(Bot.Tier.valueOf(tier.trim().toUpperCase()));
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return admission.getMaxConnections();
+    }
+
+    @Override
+    public void setMaxConnections(int maxConnections) {
+        admission.setMaxConnections(maxConnections);
+    }
+
+    @Override
+    public int getMaxConnectionsPerAddress() {
+        return admission.getMaxConnectionsPerAddress();
+    }
+
+    @Override
+    public void setMaxConnectionsPerAddress(int maxConnectionsPerAddress) {
+        admission.setMaxConnectionsPerAddress(maxConnectionsPerAddress);
+    }
+
+    @Override
+    public int getMaxGames() {
+        return admission.getMaxGames();
+    }
+
+    @Override
+    public void setMaxGames(int maxGames) {
+        admission.setMaxGames(maxGames);
+    }
+}
@@ -0,0 +1,91 @@
+package battleship;
+
+/**
+ * Management interface of the server, registered in the platform MBean server as "battleship:type=Server".
+ * Can be read and changed at runtime with JConsole or VisualVM.
+ */
+public interface ServerControlMBean {
+    /**
+     * @return Number of players waiting for an opponent
+     */
+    int getQueueLength();
+
+    /**
+     * @return Number of matched pairs waiting for the bootstrap stage
+     */
+    int getBootstrapQueueLength();
+
+    /**
+     * @return Number of connections served and not closed yet
+     */
+    int getOpenConnections();
+
+    /**
+     * @return Number of sockets parked while the server is full
+     */
+    int getBacklogLength();
+
+    /**
+     * @return Number of clients under the heartbeat monitor
+     */
+    int getHeartbeatClients();
+
+    /**
+     * @return Number of games started and not ended yet
+     */
+    long getActiveGames();
+
+    /**
+     * @return Number of threads of the pool that runs the players, -1 with virtual threads
+     */
+    int getGamesPoolThreads();
+
+    long getDisconnectTimeout();
+
+    /**
+     * @param ms Time in milliseconds after which a silent client is disconnected
+     */
+    void setDisconnectTimeout(long ms);
+
+    long getMatcherDelay();
+
+    /**
+     * @param ms Milliseconds between checks of the waiting player connection
+     */
+    void setMatcherDelay(long ms);
+
+    long getBotDelay();
+
+    /**
+     * @param ms Milliseconds after which the waiting player plays against a bot, 0 to wait for a player
+     */
+    void setBotDelay(long ms);
+
+    String getBotTier();
+
+    /**
+     * @param tier basic or sampling, the tier of the bots of the next games
+     */
+    void setBotTier(String tier);
+
+    int getMaxConnections();
+
+    /**
+     * @param maxConnections Open connections above which new sockets are parked or refused
+     */
+    void setMaxConnections(int maxConnections);
+
+    int getMaxConnectionsPerAddress();
+
+    /**
+     * @param maxConnectionsPerAddress Open connections from the same address above which its new sockets are parked or refused
+     */
+    void setMaxConnectionsPerAddress(int maxConnectionsPerAddress);
+
+    int getMaxGames();
+
+    /**
+     * @param maxGames Active games above which new sockets are parked or refused
+     */
+    void setMaxGames(int maxGames);
+}
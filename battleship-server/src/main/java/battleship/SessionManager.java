@@ -0,0 +1,201 @@
+package battleship;
+
+import battleship.journal.RecoveredGame;
+import battleship.metrics.Metrics;
+import battleship.net.Connection;
+import battleship.util.BinaryProtocol;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Greets the new connections: a connection joins the matchmaking queue with its first message,
+ * unless it's RESUME_ and the session token of a player of a running game, that takes back its place in the game.
+ * <p>
+ * Players are detached when they lose their connection during a game, or when their game is recovered from
+ * the journal after a restart. If they don't reconnect within the grace window, or the resume window after a restart,
+ * the game ends as if they disconnected.
+ */
+class SessionManager {
+    private static final String RESUME_PREFIX = "RESUME_";
+
+    private final GamesManager gamesManager;
+    private final QueueManager queueManager;
+    private final long msResumeWindow, msGraceWindow;
+    /**
+     * Players of the running games by session token
+     */
+    private final Map<Long, Game.Player> players;
+    /**
+     * Window of every detached player. Compared by reference, so an expired window of a player that reconnected is ignored
+     */
+    private final Map<Game.Player, Object> windows;
+    private final ScheduledExecutorService expirer;
+    private final LongAdder recoveredCount, resumedCount, heldCount;
+
+    /**
+     * @param gamesManager   Manager that serves the players that resume their game
+     * @param queueManager   Queue where the other connections are added
+     * @param msResumeWindow Milliseconds given to the players of the recovered games to resume them
+     * @param msGraceWindow  Milliseconds given to a player that lost its connection to reconnect, 0 to end its game immediately
+     * @param metrics        Registry where the recovered and resumed games are counted
+     * @throws IllegalArgumentException If a manager or metrics is null, msResumeWindow is less or equal to zero,
+     *                                  or msGraceWindow is less than zero
+     */
+    SessionManager(GamesManager gamesManager, QueueManager queueManager, long msResumeWindow, long msGraceWindow,
+                   Metrics metrics) throws IllegalArgumentException {
+        if (gamesManager == null || queueManager == null || metrics == null) {
+            throw new IllegalArgumentException("gamesManager, queueManager or metrics is null");
+        }
+        if (msResumeWindow <= 0) {
+            throw new IllegalArgumentException("msResumeWindow is less or equal to zero");
+        }
+        if (msGraceWindow < 0) {
+            throw new IllegalArgumentException("msGraceWindow is less than zero");
+        }
+
+        this.gamesManager = gamesManager;
+        this.queueManager = queueManager;
+        this.msResumeWindow = msResumeWindow;
+        this.msGraceWindow = msGraceWindow;
+        this.players = new ConcurrentHashMap<>();
+        this.windows = new ConcurrentHashMap<>();
+        this.expirer = Executors.newSingleThreadScheduledExecutor();
+        this.recoveredCount = metrics.counter("games.recovered");
+        this.resumedCount = metrics.counter("sessions.resumed");
+        this.heldCount = metrics.counter("sessions.held");
+        metrics.gauge("sessions.detached", windows::size);
+    }
+
+    /**
+     * Rebuilds the games recovered from the journal and waits for their players
+     *
+     * @param games The games still running when the server stopped
+     */
+    void recover(Collection<RecoveredGame> games) {
+        for (RecoveredGame state : games) {
+            try {
+                Game game = gamesManager.recover(state);
+                for (Game.Player player : new Game.Player[]{game.currentPlayer, game.currentPlayer.getOpponent()}) {
+                    register(player);
+                    startWindow(player, msResumeWindow);
+                }
+                recoveredCount.increment();
+            } catch (IllegalArgumentException e) {
+                System.out.println(String.format("[!] The game %d couldn't be recovered: %s", state.getGameId(), e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Lets the player reconnect to its game with its session token, until the game ends
+     *
+     * @param player A player of a running game
+     */
+    void register(Game.Player player) {
+        // a token that wasn't recorded can't be resumed
+        if (player.getToken() != 0)
+            players.put(player.getToken(), player);
+    }
+
+    /**
+     * Forgets the player of a game that ended
+     *
+     * @param player A registered player
+     */
+    void release(Game.Player player) {
+        players.remove(player.getToken(), player);
+    }
+
+    /**
+     * Waits for a player that lost its connection to reconnect. When the grace window expires, the game ends.
+     * Called by the game under its lock
+     *
+     * @param player The detached player
+     * @return false if the player can't reconnect, and its game must end now
+     */
+    boolean hold(Game.Player player) {
+        if (msGraceWindow == 0 || !players.containsKey(player.getToken()))
+            return false;
+
+        startWindow(player, msGraceWindow);
+        heldCount.increment();
+        return true;
+    }
+
+    private void startWindow(Game.Player player, long msWindow) {
+        Object window = new Object();
+        windows.put(player, window);
+        expirer.schedule(() -> {
+            if (windows.remove(player, window)) {
+                release(player);
+                player.abandon();
+            }
+        }, msWindow, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Greeter of the server connections, see Greeter
+     *
+     * @param c   The new connection
+     * @param msg Its first message
+     * @return true if the message was RESUME_
+     */
+    boolean greet(Connection c, String msg) {
+        if (!msg.startsWith(RESUME_PREFIX)) {
+            queue(c);
+            return false;
+        }
+
+        Game.Player player = null;
+        try {
+            player = players.get(BinaryProtocol.parseToken(msg, RESUME_PREFIX.length()));
+        } catch (IllegalArgumentException ignore) {
+        }
+
+        boolean isResumed = false;
+        if (player != null) {
+            windows.remove(player);
+            isResumed = gamesManager.resume(player, c);
+            if (!isResumed)
+                release(player);
+        }
+
+        if (isResumed) {
+            resumedCount.increment();
+            System.out.println(String.format("[*] '%s' resumed its game", c.getSocketInfo()));
+        } else {
+            c.queue("RESUME_ERR");
+            queue(c);
+        }
+        return true;
+    }
+
+    private void queue(Connection c) {
+        try {
+            queueManager.add(c);
+        } catch (IllegalAccessException e) {
+            System.out.println("[!] The listener returned an empty socket");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return Number of players waiting to reconnect
+     */
+    int getDetachedCount() {
+        return windows.size();
+    }
+
+    /**
+     * Stops the expiration of the resume windows. Detached players are left as they are
+     */
+    void shutdown() {
+        expirer.shutdownNow();
+    }
+}
@@ -1,13 +1,22 @@
 package battleship;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+/**
+ * A ship on a Board. Its cells are stored as a 128-bit occupancy mask, "XXYY" strings are used only for the wire format.
+ */
 public class Ship {
     private final List<String> squares;
+    /**
+     * Wire format of the ship, built once
+     */
+    private final String encoded;
+    private final ShotResult sankResult;
+    private final String sankMessage;
+    private final long maskLo, maskHi;
     private int length;
-    private List<String> squaresHit;
+    private long hitLo, hitHi;
 
     /**
      * Create a ship
@@ -15,12 +24,7 @@ public class Ship {
      * @throws IllegalArgumentException if ships is invalid
      */
     public Ship(String[] squares) throws IllegalArgumentException {
-        if (squares == null || squares.length < 1)
-            throw new IllegalArgumentException("squares is invalid");
-
-        this.squares = Arrays.asList(squares);
-        this.length = squares.length;
-        this.squaresHit = new ArrayList<>();
+        this(squares == null ? null : Arrays.asList(squares));
     }
 
     /**
@@ -32,37 +36,88 @@ public class Ship {
         if (squares == null || squares.size() < 1)
             throw new IllegalArgumentException("squares is invalid");
 
+        long lo = 0, hi = 0;
+        for (String square : squares) {
+            int cell = Board.cell(square);
+            lo |= Board.lo(cell);
+            hi |= Board.hi(cell);
+        }
+
         this.squares = squares;
+        this.encoded = String.join("_", squares);
+        this.sankResult = new ShotResult(Shot.SANK, this);
+        this.sankMessage = "SANK_" + encoded;
+        this.maskLo = lo;
+        this.maskHi = hi;
         this.length = squares.size();
-        this.squaresHit = new ArrayList<>();
     }
 
     /**
      * Tries to hit the ship and if succeed, will update the ship status.
      * @param hitPosition "XXYY" position to hit.
-     * @return The appropriate Shot.* response for how the hit affected the ship.
+     * @return The appropriate Shot.* response for how the hit affected the ship, OCEAN if the position is outside the grid.
+     * @throws IllegalArgumentException If hitPosition is null or isn't 4 characters long
      */
     public Shot hit(String hitPosition) throws IllegalArgumentException {
         if (hitPosition == null || hitPosition.length() != 4)
             throw new IllegalArgumentException("hitPosition argument is invalid.");
 
-        if (squares.contains(hitPosition)) {
-            if (!squaresHit.contains(hitPosition)) {
-                squaresHit.add(hitPosition);
-                return squaresRemained() == 0 ? Shot.SANK : Shot.HIT ;
-            }
-            return Shot.DUPLICATE;
-        } else {
+        // an unchecked index would alias a cell of the grid, since the mask shifts are taken modulo 64
+        int cell = Protocol.parseCell(hitPosition, 0);
+        return cell < 0 ? Shot.OCEAN : hit(cell);
+    }
+
+    /**
+     * Tries to hit the ship and if succeed, will update the ship status.
+     * @param cell Index of the cell to hit.
+     * @return The appropriate Shot.* response for how the hit affected the ship.
+     */
+    public Shot hit(int cell) {
+        if (!occupies(cell))
             return Shot.OCEAN;
-        }
+        if (Board.contains(hitLo, hitHi, cell))
+            return Shot.DUPLICATE;
+
+        hitLo |= Board.lo(cell);
+        hitHi |= Board.hi(cell);
+        return squaresRemained() == 0 ? Shot.SANK : Shot.HIT;
+    }
+
+    /**
+     * @return True if the ship is placed on the cell
+     */
+    public boolean occupies(int cell) {
+        return Board.contains(maskLo, maskHi, cell);
     }
 
     public int squaresRemained() {
-        return this.length - squaresHit.size();
+        return this.length - Long.bitCount(hitLo) - Long.bitCount(hitHi);
+    }
+
+    /**
+     * @return The shared SANK result of this ship
+     */
+    public ShotResult getSankResult() {
+        return sankResult;
+    }
+
+    /**
+     * @return The pre-encoded "SANK_XXYY_..." message of this ship
+     */
+    public String getSankMessage() {
+        return sankMessage;
+    }
+
+    public long getMaskLo() {
+        return maskLo;
+    }
+
+    public long getMaskHi() {
+        return maskHi;
     }
 
     @Override
     public String toString() {
-        return String.join("_", squares);
+        return encoded;
     }
 }
@@ -1,11 +1,16 @@
 package battleship;
 
 /**
- * Class used to return also the sankShip when status if SANK
+ * Class used to return also the sankShip when status if SANK.
+ * Results are immutable: HIT, OCEAN and DUPLICATE are shared singletons and every Ship holds its own SANK result.
  */
 public class ShotResult {
-    private Shot status;
-    private Ship sankShip;
+    public static final ShotResult HIT = new ShotResult(Shot.HIT);
+    public static final ShotResult OCEAN = new ShotResult(Shot.OCEAN);
+    public static final ShotResult DUPLICATE = new ShotResult(Shot.DUPLICATE);
+
+    private final Shot status;
+    private final Ship sankShip;
 
     public ShotResult(Shot status, Ship sankShip) {
         this.status = status;
@@ -0,0 +1,52 @@
+package battleship;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors that run players and input readers.
+ * <p>
+ * Virtual threads are looked up by reflection so that the server still builds and runs on Java 8.
+ */
+final class Threads {
+    private Threads() {
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads (JDK 21+)
+     */
+    static boolean isVirtualSupported() {
+        return findVirtualFactory() != null;
+    }
+
+    /**
+     * Creates an executor that runs every task on its own thread
+     *
+     * @param virtual If true and supported, tasks are run on virtual threads. Otherwise on a cached pool of platform threads
+     * @return The executor
+     */
+    static ExecutorService newPerTaskExecutor(boolean virtual) {
+        if (virtual) {
+            Method factory = findVirtualFactory();
+            if (factory != null) {
+                try {
+                    return (ExecutorService) factory.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    e.printStackTrace();
+                }
+            }
+            System.out.println("[!] Virtual threads aren't supported by this JVM, using platform threads");
+        }
+
+        return Executors.newCachedThreadPool();
+    }
+
+    private static Method findVirtualFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package battleship;
+
+import battleship.metrics.Metrics;
+import battleship.net.DetachedConnection;
+import battleship.util.FleetGenerator;
+import battleship.util.Histogram;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless tournament between two bot tiers: they play games against each other, without connections,
+ * on a pool like the one of the server bots. Then it prints the wins, the shots to win, the move times and the throughput.
+ * The bots alternate the first turn, and both shoot random fleets. With a bookSize, the basic bots share an OpeningBook.
+ * <p>
+ * Usage: Tournament [games] [tierA] [tierB] [threads] [moveBudgetMs] [samples] [bookSize]
+ * (default: 1000 sampling basic [half the cores] 50 2000 0)
+ */
+public class Tournament {
+    /**
+     * Validates the random grids into fleets. Its parsing has no state, so it's shared by all the games
+     */
+    private static final Game.Player PARSER = new Game().new Player(DetachedConnection.INSTANCE);
+
+    /**
+     * A tier and its results
+     */
+    private static class Entrant {
+        private final String name;
+        private final Bot.Tier tier;
+        private final LongAdder wins = new LongAdder();
+        private final LongAdder winningShots = new LongAdder();
+        /**
+         * Time to choose a shot, in us
+         */
+        private final Histogram moveTime = new Histogram();
+
+        Entrant(String name, Bot.Tier tier) {
+            this.name = name;
+            this.tier = tier;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        Bot.Tier tierA = args.length > 1 ? Bot.Tier.valueOf(args[1].toUpperCase()) : Bot.Tier.SAMPLING;
+        Bot.Tier tierB = args.length > 2 ? Bot.Tier.valueOf(args[2].toUpperCase()) : Bot.Tier.BASIC;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        long msMoveBudget = args.length > 4 ? Long.parseLong(args[4]) : 50;
+        int samples = args.length > 5 ? Integer.parseInt(args[5]) : 2000;
+        int bookSize = args.length > 6 ? Integer.parseInt(args[6]) : 0;
+
+        Entrant a = new Entrant("A " + tierA.name().toLowerCase(), tierA);
+        Entrant b = new Entrant("B " + tierB.name().toLowerCase(), tierB);
+        Histogram samplesPerMove = new Histogram();
+        MonteCarlo sampler = new MonteCarlo(TimeUnit.MILLISECONDS.toNanos(msMoveBudget), samples, samplesPerMove);
+        Metrics metrics = new Metrics();
+        OpeningBook book = bookSize > 0 ? new OpeningBook(bookSize, 10, metrics) : null;
+
+        System.out.println(String.format("[*] %d games, %s against %s, on %d threads", games, a.name, b.name, threads));
+        ForkJoinPool pool = new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        long start = System.nanoTime();
+        for (int i = 0; i < games; i++) {
+            boolean aFirst = i % 2 == 0;
+            pool.execute(() -> {
+                try {
+                    play(aFirst ? a : b, aFirst ? b : a, sampler, book);
+                } catch (Exception e) {
+                    System.out.println("[!] An exception was thrown during a game");
+                    e.printStackTrace();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long moves = a.moveTime.getCount() + b.moveTime.getCount();
+        System.out.println(String.format("[*] %.1fs: %.1f games/s, %.0f moves/s", seconds, games / seconds, moves / seconds));
+        for (Entrant e : new Entrant[]{a, b}) {
+            long wins = e.wins.sum();
+            System.out.println(String.format("    %-8s wins=%d (%.1f%%) shots to win=%.1f", e.name, wins, 100.0 * wins / games,
+                    wins == 0 ? 0 : (double) e.winningShots.sum() / wins));
+            System.out.println(String.format("    %-8s move us: %s", e.name, e.moveTime));
+        }
+        if (samplesPerMove.getCount() > 0)
+            System.out.println("    samples per sampling move: " + samplesPerMove);
+        if (book != null)
+            System.out.println(String.format("    book: %d entries, hits=%d%%, saved %d ms", book.size(),
+                    metrics.getGauge(Metrics.BOOK_HIT_PERCENT), metrics.counter(Metrics.BOOK_SAVED_NS).sum() / 1000000));
+    }
+
+    /**
+     * Plays a game until a fleet is sunk
+     *
+     * @param first   The bot with the first turn
+     * @param second  The other bot
+     * @param sampler Targeting of the sampling bots
+     * @param book    Cache of the decisions of the basic bots, or null
+     */
+    private static void play(Entrant first, Entrant second, MonteCarlo sampler, OpeningBook book) {
+        Random random = ThreadLocalRandom.current();
+        Entrant[] entrants = {first, second};
+        // fleets[i] is shot by entrants[i]
+        Board[] fleets = {randomFleet(random), randomFleet(random)};
+        DensityMap[] maps = {new DensityMap(), new DensityMap()};
+        int[] shots = new int[2];
+
+        for (int turn = 0; ; turn = 1 - turn) {
+            Entrant e = entrants[turn];
+            DensityMap map = maps[turn];
+
+            long moveStart = System.nanoTime();
+            int cell = Bot.nextShot(map, e.tier == Bot.Tier.SAMPLING ? sampler : null, book, random);
+            e.moveTime.record((System.nanoTime() - moveStart) / 1000);
+            shots[turn]++;
+
+            ShotResult result = fleets[turn].shoot(cell);
+            switch (result.getStatus()) {
+                case HIT:
+                    map.hit(cell);
+                    break;
+                case SANK:
+                    map.sank(Bot.cells(result.getSankShip().getSankMessage()));
+                    break;
+                default:
+                    map.miss(cell);
+            }
+
+            if (fleets[turn].hasLost()) {
+                e.wins.increment();
+                e.winningShots.add(shots[turn]);
+                return;
+            }
+        }
+    }
+
+    private static Board randomFleet(Random random) {
+        return new Board(PARSER.setupGrid(FleetGenerator.nextGrid(random)));
+    }
+}
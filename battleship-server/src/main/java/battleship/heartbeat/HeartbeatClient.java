@@ -1,31 +1,56 @@
 package battleship.heartbeat;
 
+import battleship.net.Connection;
+import battleship.net.Greeter;
 import battleship.util.PlayerSocket;
 
 import java.io.IOException;
 import java.net.Socket;
-import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Client based on PlayerSocket class with the addition of functions used to check is the client is still alive.
  */
-public class HeartbeatClient {
+public class HeartbeatClient implements Connection {
+    /**
+     * Put in the input buffer to wake up a consumer blocked in takeMessage(). Compared by reference
+     */
+    private static final String WAKE_UP = new String("WAKE_UP");
+    /**
+     * Max number of messages buffered. When full, the input stream isn't read until a message is consumed
+     */
+    private static final int INBOX_CAPACITY = 64;
+
     private PlayerSocket client;
-    private long lastBeat;
-    private boolean isClosed;
+    private volatile long lastBeat;
+    private volatile boolean isClosed;
     /**
-     * Thread that manages the input stream
+     * Executor that runs the input stream task, owned only if created by this client
      */
     private ExecutorService iThread;
+    private boolean isExecutorOwned;
+    /**
+     * Task that reads the input stream
+     */
+    private Future<?> iTask;
+    /**
+     * Bounded buffer that stores received messages. Consumers wait on it instead of polling
+     */
+    private BlockingQueue<String> inBuffer;
     /**
-     * Buffer that stores received messages and prevent blocking requests
+     * Receives the first message, null once it's called. Only accessed by the reader task
      */
-    private LinkedList<String> inBuffer;
+    private Greeter greeter;
 
     /**
-     * Initialize the PlayerSocket class with the given Socket and set lastBeat to currentTime
+     * Initialize the PlayerSocket class with the given Socket and set lastBeat to currentTime.
+     * The input stream is read by a new dedicated thread.
      *
      * @param client               Client socket
      * @param initialTimeoutOffset time in milliseconds added to the currentTime to ensure stability on initial connection Setup
@@ -33,21 +58,53 @@ public class HeartbeatClient {
      * @throws IOException              If there was an error creating the PlayerSocket
      */
     public HeartbeatClient(Socket client, long initialTimeoutOffset) throws IllegalArgumentException, IOException {
+        this(client, initialTimeoutOffset, Executors.newSingleThreadExecutor());
+        this.isExecutorOwned = true;
+    }
+
+    /**
+     * Initialize the PlayerSocket class with the given Socket and set lastBeat to currentTime
+     *
+     * @param client               Client socket
+     * @param initialTimeoutOffset time in milliseconds added to the currentTime to ensure stability on initial connection Setup
+     * @param readers              Executor that runs the task reading the input stream. The task blocks until the socket is closed
+     * @throws IllegalArgumentException If client socket or readers are null or initialTimeoutOffset is less than zero
+     * @throws IOException              If there was an error creating the PlayerSocket
+     */
+    public HeartbeatClient(Socket client, long initialTimeoutOffset, ExecutorService readers) throws IllegalArgumentException, IOException {
+        this(client, initialTimeoutOffset, readers, null);
+    }
+
+    /**
+     * Initialize the PlayerSocket class with the given Socket and set lastBeat to currentTime
+     *
+     * @param client               Client socket
+     * @param initialTimeoutOffset time in milliseconds added to the currentTime to ensure stability on initial connection Setup
+     * @param readers              Executor that runs the task reading the input stream. The task blocks until the socket is closed
+     * @param greeter              Handles the first message, on the reader task. Can be null
+     * @throws IllegalArgumentException If client socket or readers are null or initialTimeoutOffset is less than zero
+     * @throws IOException              If there was an error creating the PlayerSocket
+     */
+    public HeartbeatClient(Socket client, long initialTimeoutOffset, ExecutorService readers, Greeter greeter) throws IllegalArgumentException, IOException {
         if (client == null) {
             throw new IllegalArgumentException("Client socket is null");
         }
         if (initialTimeoutOffset < 0) {
             throw new IllegalArgumentException("initialTimeoutOffset is less than zero");
         }
+        if (readers == null) {
+            throw new IllegalArgumentException("readers is null");
+        }
 
-        this.client = new PlayerSocket(client);
+        this.client = PlayerSocket.accepted(client);
         this.lastBeat = System.currentTimeMillis() + initialTimeoutOffset;
         this.isClosed = false;
-        this.inBuffer = new LinkedList<>();
+        this.inBuffer = new LinkedBlockingQueue<>(INBOX_CAPACITY);
+        this.greeter = greeter;
 
         // Thread that manages the input stream
-        iThread = Executors.newSingleThreadExecutor();
-        iThread.execute(iThreadTask);
+        iThread = readers;
+        iTask = readers.submit(iThreadTask);
     }
 
     /**
@@ -59,55 +116,89 @@ public class HeartbeatClient {
     protected void finalize() throws Throwable {
         try {
             client.getSocket().close();
-            iThread.shutdownNow();
+            stopReader();
             this.clearBuffer();
         } finally {
             super.finalize();
         }
     }
 
+    /**
+     * Chooses the protocol from the first byte received, then blocks on the input stream and hands every message
+     * to the consumer waiting on the buffer. Ends when the socket is closed
+     */
     private Runnable iThreadTask = () -> {
-        while (!isClosed) {
-            try {
-                int available = this.client.getSocket().getInputStream().available();
-                if (available > 0) {
-                    String msg = this.client.getIn().nextLine();
+        try {
+            this.client.acceptHandshake();
+
+            while (!isClosed) {
+                String msg = this.client.nextMessage();
+                if (msg == null) {
+                    // Input stream closed
+                    disconnect();
+                    return;
+                }
 
-                    this.beat();
+                this.beat();
 
-                    if (!msg.startsWith("PING")) {
-                        inBuffer.add(msg);
+                if (greeter != null) {
+                    Greeter g = greeter;
+                    greeter = null;
+                    if (g.onFirstMessage(this, msg))
+                        continue;
+                }
 
-                    }
+                if (!msg.startsWith("PING")) {
+                    inBuffer.put(msg);
                 }
-                Thread.sleep(10);
-            } catch (IOException | InterruptedException e) {
-                Thread.currentThread().interrupt();
             }
+        } catch (IOException | NoSuchElementException | IllegalStateException e) {
+            // Input stream closed or invalid binary frame
+            disconnect();
+        } catch (InterruptedException ignore) {
+            // Reader stopped by disconnect()
         }
     };
 
+    private void stopReader() {
+        iTask.cancel(true);
+        if (isExecutorOwned)
+            iThread.shutdownNow();
+    }
+
+    @Override
     public long getLastBeat() {
         return lastBeat;
     }
 
     /**
-     * Print a message in the output stream
+     * Print a message in the output stream and flush it
      *
      * @param msg The message to be printed
      * @throws IllegalArgumentException If argument is null
      */
+    @Override
     public void println(String msg) throws IllegalArgumentException {
         client.println(msg);
     }
 
+    @Override
+    public void queue(String msg) throws IllegalArgumentException {
+        client.queue(msg);
+    }
+
+    @Override
+    public void flush() {
+        client.flush();
+    }
+
     /**
      * Checks if there are messages in the input buffer
      *
      * @return true if there at least one message in the input buffer
      */
     public boolean available() {
-        return inBuffer.size() > 0;
+        return !inBuffer.isEmpty();
     }
 
     /**
@@ -116,11 +207,46 @@ public class HeartbeatClient {
      * @return A string if there's a message to be returned, null otherwise
      */
     public String getOneMessage() {
-        if (available()) {
-            return inBuffer.pop();
-        } else {
+        String msg = inBuffer.poll();
+        return msg == WAKE_UP ? null : msg;
+    }
+
+    /**
+     * Waits until a message is received
+     *
+     * @return The message, or null if the client is closed or wakeUp() was called
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public String takeMessage() throws InterruptedException {
+        if (isClosed)
             return null;
-        }
+
+        String msg = inBuffer.take();
+        return msg == WAKE_UP ? null : msg;
+    }
+
+    /**
+     * Waits until a message is received or the timeout expires
+     *
+     * @param timeout How long to wait
+     * @param unit    Unit of the timeout
+     * @return The message, or null if the timeout expired, the client is closed or wakeUp() was called
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public String takeMessage(long timeout, TimeUnit unit) throws InterruptedException {
+        if (isClosed)
+            return null;
+
+        String msg = inBuffer.poll(timeout, unit);
+        return msg == WAKE_UP ? null : msg;
+    }
+
+    /**
+     * Makes a consumer blocked in takeMessage() return immediately.
+     * If the buffer is full, there's no consumer blocked and nothing is done
+     */
+    public void wakeUp() {
+        inBuffer.offer(WAKE_UP);
     }
 
     /**
@@ -135,6 +261,7 @@ public class HeartbeatClient {
      *
      * @return true if disconnect() function has been called(), false otherwise.
      */
+    @Override
     public boolean isClosed() {
         return isClosed;
     }
@@ -149,13 +276,15 @@ public class HeartbeatClient {
     /**
      * Close client socket and send a disconnect message to System.out stream
      */
-    public void disconnect() {
+    @Override
+    public synchronized void disconnect() {
         try {
             if (!isClosed) {
                 System.out.println(String.format("[*] '%s' disconnected", getSocketInfo()));
-                client.getSocket().close();
-                iThread.shutdownNow();
                 this.isClosed = true;
+                wakeUp();
+                client.getSocket().close();
+                stopReader();
             }
         } catch (IOException ignore) {
         }
@@ -165,6 +294,7 @@ public class HeartbeatClient {
      * Gets remote Address and port of the current client socket
      * @return Socket address and port formatted into a string
      */
+    @Override
     public String getSocketInfo() {
         return this.client.getSocket().getRemoteSocketAddress().toString();
     }
@@ -1,30 +1,55 @@
 package battleship.heartbeat;
 
-import java.util.ArrayList;
-import java.util.List;
+import battleship.net.Connection;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Class that manages all Sockets and controls they are still online checking, every specified period of time. if they are still in use.
+ * Class that manages all Sockets and disconnects the ones that haven't sent anything for the disconnect timeout.
+ * <p>
+ * Clients are kept in a timing wheel, by the deadline computed from their last beat.
+ * A beat only updates the client lastBeat: when the deadline is reached, a client that has beaten in the meantime
+ * is scheduled again at its new deadline, otherwise it's disconnected. Every tick only touches the clients in its slot.
+ * <p>
+ * The disconnect timeout can be changed at runtime: it's used from the next deadline of each client,
+ * while the wheel keeps the tick of the initial timeout.
  */
 public class HeartbeatManager {
+    /**
+     * Ticks in which the disconnect timeout is divided
+     */
+    private static final int TICKS_PER_TIMEOUT = 16;
+    private static final int WHEEL_SIZE = 64;
+    private static final int WHEEL_LEVELS = 4;
+
     /**
      * Timeout in milliseconds after which a client is considered disconnected
      */
-    private long msDisconnectTimeout;
+    private volatile long msDisconnectTimeout;
     /**
      * The Runnable task that checks if all the clients are still up
      */
     private ScheduledExecutorService heartbeatAgent;
     /**
-     * List of all the clients that are checked
+     * Clients added since the last tick. Only the heartbeatAgent moves them in the wheel
      */
-    private List<HeartbeatClient> clients;
+    private Queue<Connection> newClients;
+    /**
+     * Clients by deadline, used only by the heartbeatAgent
+     */
+    private TimingWheel<Connection> clients;
+    /**
+     * Clients added and not dropped yet. Closed clients are dropped when their deadline is reached
+     */
+    private AtomicInteger clientsCount;
 
     /**
-     * Initialize the manager and start the scheduled checker task every msDisconnectTimeout/1.5 milliseconds.
+     * Initialize the manager and start the scheduled checker task every msDisconnectTimeout/16 milliseconds.
      * @param msDisconnectTimeout The time in milliseconds after which a client is considered disconnected
      * @throws IllegalArgumentException If msDisconnectedTimeout is less or equal to zero
      */
@@ -34,32 +59,82 @@ public class HeartbeatManager {
         }
 
         this.msDisconnectTimeout = msDisconnectTimeout;
+        long msTick = Math.max(1, msDisconnectTimeout / TICKS_PER_TIMEOUT);
 
-        clients = new ArrayList<>();
+        newClients = new ConcurrentLinkedQueue<>();
+        clientsCount = new AtomicInteger();
+        clients = new TimingWheel<>(msTick, WHEEL_SIZE, WHEEL_LEVELS, System.currentTimeMillis());
 
         heartbeatAgent = Executors.newSingleThreadScheduledExecutor();
-        heartbeatAgent.scheduleAtFixedRate(checkClientsBeatsTask, 0, (long) Math.ceil(msDisconnectTimeout / 1.5), TimeUnit.MILLISECONDS);
+        heartbeatAgent.scheduleAtFixedRate(checkClientsBeatsTask, msTick, msTick, TimeUnit.MILLISECONDS);
     }
 
     private Runnable checkClientsBeatsTask = () -> {
         try {
-            long currentTime = System.currentTimeMillis();
-
-            for (HeartbeatClient client : clients) {
-                if (currentTime - client.getLastBeat() > msDisconnectTimeout) {
-                    client.disconnect();
-                    clients.remove(client);
-                }
+            Connection client;
+            while ((client = newClients.poll()) != null) {
+                clients.schedule(client, client.getLastBeat() + msDisconnectTimeout);
             }
-        } catch (Exception ignore) {
+
+            long currentTime = System.currentTimeMillis();
+            clients.advance(currentTime, c -> checkClient(c, currentTime));
+        } catch (Exception e) {
+            // an exception would cancel the scheduled task
+            System.out.println("[!] An exception was thrown while checking the clients heartbeat");
+            e.printStackTrace();
         }
     };
 
     /**
-     * Adds a Client to the heartbeat monitor list
+     * Called when the deadline of a client is reached
+     *
+     * @param client      The client
+     * @param currentTime Time of the current check
+     */
+    private void checkClient(Connection client, long currentTime) {
+        if (client.isClosed()) {
+            clientsCount.decrementAndGet();
+            return;
+        }
+
+        long deadline = client.getLastBeat() + msDisconnectTimeout;
+        if (deadline < currentTime) {
+            clientsCount.decrementAndGet();
+            client.disconnect();
+        } else {
+            clients.schedule(client, deadline);
+        }
+    }
+
+    /**
+     * Adds a Client to the heartbeat monitor list. Can be called by any thread
      * @param c Client to add
      */
-    public void add(HeartbeatClient c) {
-        clients.add(c);
+    public void add(Connection c) {
+        clientsCount.incrementAndGet();
+        newClients.add(c);
+    }
+
+    /**
+     * @return Number of clients under the heartbeat monitor. Closed clients are counted until their deadline
+     */
+    public int getClientsCount() {
+        return clientsCount.get();
+    }
+
+    public long getMsDisconnectTimeout() {
+        return msDisconnectTimeout;
+    }
+
+    /**
+     * @param msDisconnectTimeout The time in milliseconds after which a client is considered disconnected
+     * @throws IllegalArgumentException If msDisconnectedTimeout is less or equal to zero
+     */
+    public void setMsDisconnectTimeout(long msDisconnectTimeout) throws IllegalArgumentException {
+        if (msDisconnectTimeout <= 0) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+
+        this.msDisconnectTimeout = msDisconnectTimeout;
     }
 }
@@ -0,0 +1,147 @@
+package battleship.heartbeat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel.
+ * <p>
+ * Level 0 has one slot per tick, every slot of level k covers wheelSize slots of level k-1.
+ * When a level completes a rotation, the next slot of the upper level is cascaded into the lower ones,
+ * so every advance() only touches the entries that expire, or move down, in the elapsed ticks.
+ * <p>
+ * Not thread-safe: it must be used by a single thread.
+ *
+ * @param <T> Type of the scheduled items
+ */
+class TimingWheel<T> {
+    private final long msTick;
+    private final int wheelSize;
+    /**
+     * slots[level][slot]
+     */
+    private final List<Entry<T>>[][] slots;
+    /**
+     * Number of ticks covered by a slot of each level
+     */
+    private final long[] levelTicks;
+    /**
+     * Last tick processed, as the number of ticks since epoch
+     */
+    private long currentTick;
+    /**
+     * Empty list swapped with the slot being processed
+     */
+    private List<Entry<T>> spare = new ArrayList<>();
+
+    /**
+     * @param msTick    Duration of a tick in milliseconds
+     * @param wheelSize Number of slots of every level
+     * @param levels    Number of levels
+     * @param startTime Current time in milliseconds
+     * @throws IllegalArgumentException If any argument is less or equal to zero, or wheelSize is less than 2
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimingWheel(long msTick, int wheelSize, int levels, long startTime) throws IllegalArgumentException {
+        if (msTick <= 0 || wheelSize < 2 || levels <= 0 || startTime <= 0) {
+            throw new IllegalArgumentException("Invalid arguments");
+        }
+
+        this.msTick = msTick;
+        this.wheelSize = wheelSize;
+        this.currentTick = startTime / msTick;
+
+        levelTicks = new long[levels];
+        levelTicks[0] = 1;
+        for (int level = 1; level < levels; level++) {
+            levelTicks[level] = levelTicks[level - 1] * wheelSize;
+        }
+
+        slots = new List[levels][wheelSize];
+        for (List<Entry<T>>[] level : slots) {
+            for (int i = 0; i < wheelSize; i++) {
+                level[i] = new ArrayList<>();
+            }
+        }
+    }
+
+    /**
+     * Schedules an item. Deadlines already passed expire on the next tick
+     *
+     * @param item     The item
+     * @param deadline Time in milliseconds after which the item expires
+     */
+    void schedule(T item, long deadline) {
+        insert(new Entry<>(item, deadline), Math.max(deadline / msTick + 1, currentTick + 1));
+    }
+
+    /**
+     * Processes all the ticks elapsed until now.
+     * onExpired may schedule items again.
+     *
+     * @param now       Current time in milliseconds
+     * @param onExpired Called with every expired item
+     */
+    void advance(long now, Consumer<T> onExpired) {
+        while ((currentTick + 1) * msTick <= now) {
+            currentTick++;
+
+            // move down the entries of the upper levels that expire in this rotation, starting from the top
+            for (int level = slots.length - 1; level > 0; level--) {
+                if (currentTick % levelTicks[level] == 0) {
+                    for (Entry<T> e : detach(level, (int) (currentTick / levelTicks[level] % wheelSize))) {
+                        insert(e, e.deadline / msTick + 1);
+                    }
+                    spare.clear();
+                }
+            }
+
+            for (Entry<T> e : detach(0, (int) (currentTick % wheelSize))) {
+                onExpired.accept(e.item);
+            }
+            spare.clear();
+        }
+    }
+
+    /**
+     * Puts an entry in the lowest level that covers its expiry tick
+     */
+    private void insert(Entry<T> e, long expiryTick) {
+        expiryTick = Math.max(expiryTick, currentTick);
+
+        for (int level = 0; level < slots.length; level++) {
+            long levelTick = expiryTick / levelTicks[level];
+            if (levelTick - currentTick / levelTicks[level] < wheelSize) {
+                slots[level][(int) (levelTick % wheelSize)].add(e);
+                return;
+            }
+        }
+
+        // beyond the wheel: park it in the farthest slot of the top level, it will be inserted again when cascaded
+        int top = slots.length - 1;
+        slots[top][(int) ((currentTick / levelTicks[top] + wheelSize - 1) % wheelSize)].add(e);
+    }
+
+    /**
+     * Replaces a slot with the spare empty list
+     *
+     * @return The entries of the slot. The caller must clear it after use
+     */
+    private List<Entry<T>> detach(int level, int slot) {
+        List<Entry<T>> entries = slots[level][slot];
+        slots[level][slot] = spare;
+        spare = entries;
+        return entries;
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private final long deadline;
+
+        private Entry(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package battleship.journal;
+
+import battleship.Shot;
+import battleship.metrics.Metrics;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Append-only journal of the games, written to memory-mapped segment files.
+ * <p>
+ * The game threads only put the records in a RecordRing, a single writer thread encodes them in the current segment
+ * and starts a new one when it's full, so nothing waits on the disk. If the writer falls behind and the ring is full,
+ * records are dropped and counted. The writer parks when the ring is empty, the next record appended wakes it up.
+ * <p>
+ * Every snapshotInterval ms the state of all the live games is written again, between a CHECKPOINT and a
+ * CHECKPOINT_DONE record, so a restarted server rebuilds the games reading only the segments from the last
+ * complete checkpoint (see Recovery). Once a checkpoint is complete, the writer deletes the segments before the one
+ * where it started, they aren't needed anymore.
+ * <p>
+ * Segment files are named "journal-NNNNNN.seg". They start with MAGIC and VERSION (4 bytes each), then records follow
+ * until a zero byte or the end of the file. Every record starts with its type (1 byte), the time in milliseconds
+ * (8 bytes) and the game id (8 bytes), then:
+ * <ul>
+ * <li>MATCH: nothing</li>
+ * <li>GRID: the player (1 byte, 1 has the first turn) and the mask of the ships cells (2 longs, see Board)</li>
+ * <li>SHOT: the player, the cell and the result (1 byte each, see SHOT_HIT...)</li>
+ * <li>END: the reason (END_WIN or END_OPPONENT_DC) and the winner (1 byte each), the other player lost</li>
+ * <li>SESSION: the player and its session token (8 bytes)</li>
+ * <li>SNAPSHOT: the player of the current turn (1 byte). The game state is reset, and rebuilt from the GRID, SHOTS
+ * and SESSION records of the game that follow</li>
+ * <li>SHOTS: the player and the mask of the cells it shot (2 longs)</li>
+ * <li>CHECKPOINT and CHECKPOINT_DONE: nothing, their game id is 0</li>
+ * </ul>
+ * The type is written after the rest of the record, so a record cut by a crash is never read.
+ * All numbers are big endian.
+ */
+public class Journal {
+    public static final int MAGIC = 0x42534A4C; // "BSJL"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+
+    public static final byte MATCH = 1;
+    public static final byte GRID = 2;
+    public static final byte SHOT = 3;
+    public static final byte END = 4;
+    public static final byte SESSION = 5;
+    public static final byte SNAPSHOT = 6;
+    public static final byte SHOTS = 7;
+    public static final byte CHECKPOINT = 8;
+    public static final byte CHECKPOINT_DONE = 9;
+
+    public static final byte SHOT_HIT = 1;
+    public static final byte SHOT_OCEAN = 2;
+    public static final byte SHOT_SANK = 3;
+
+    public static final byte END_WIN = 1;
+    public static final byte END_OPPONENT_DC = 2;
+
+    private static final int RECORD_BASE_SIZE = 1 + 8 + 8;
+    private static final int RING_CAPACITY = 1 << 16;
+    private static final long DRAIN_PARK_NS = 1_000_000; // snapshot thread pause while the ring is more than half full
+    private static final int FORCE_DELAY = 1000; // ms between flushes of the current segment to disk
+    private static final int SNAPSHOT_DELAY = 10000; // default ms between snapshots of the live games
+
+    /**
+     * Journal that doesn't write anything
+     */
+    public static final Journal DISABLED = new Journal();
+
+    private final AtomicLong nextGameId;
+    private final RecordRing ring;
+    private final Path dir;
+    private final int segmentSize;
+    private final LongAdder records, dropped;
+    private final Thread writer;
+    private volatile boolean isClosed;
+    /**
+     * Set by the writer before it parks on an empty ring, cleared by the thread that wakes it up
+     */
+    private volatile boolean isWriterParked;
+    /**
+     * Live games by id, with the task that writes their snapshot
+     */
+    private final Map<Long, Runnable> games;
+    private final ScheduledExecutorService snapshotter;
+
+    /**
+     * Current segment, used only by the writer thread
+     */
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    /**
+     * Index of the segment of the last CHECKPOINT written, 0 after its CHECKPOINT_DONE. Used only by the writer thread
+     */
+    private int checkpointSegment;
+
+    private Journal() {
+        this.nextGameId = new AtomicLong();
+        this.ring = null;
+        this.dir = null;
+        this.segmentSize = 0;
+        this.records = new LongAdder();
+        this.dropped = new LongAdder();
+        this.writer = null;
+        this.games = null;
+        this.snapshotter = null;
+    }
+
+    /**
+     * Opens a new segment in the directory, after the existing ones, and starts the writer thread
+     *
+     * @param dir         Directory of the segments, created if it doesn't exist
+     * @param segmentSize Size of every segment file in bytes
+     * @param metrics     Registry where the records written and dropped are counted
+     * @throws IOException              If the directory or the first segment couldn't be created
+     * @throws IllegalArgumentException If dir or metrics is null, or segmentSize can't hold a record
+     */
+    public Journal(Path dir, int segmentSize, Metrics metrics) throws IOException, IllegalArgumentException {
+        this(dir, segmentSize, SNAPSHOT_DELAY, metrics);
+    }
+
+    /**
+     * Opens a new segment in the directory, after the existing ones, and starts the writer and the snapshot threads
+     *
+     * @param dir                Directory of the segments, created if it doesn't exist
+     * @param segmentSize        Size of every segment file in bytes
+     * @param msSnapshotInterval Milliseconds between snapshots of the live games
+     * @param metrics            Registry where the records written and dropped are counted
+     * @throws IOException              If the directory or the first segment couldn't be created
+     * @throws IllegalArgumentException If dir or metrics is null, segmentSize can't hold a record or msSnapshotInterval is less or equal to zero
+     */
+    public Journal(Path dir, int segmentSize, long msSnapshotInterval, Metrics metrics) throws IOException, IllegalArgumentException {
+        if (dir == null || metrics == null) {
+            throw new IllegalArgumentException("dir or metrics is null");
+        }
+        if (segmentSize < HEADER_SIZE + 64) {
+            throw new IllegalArgumentException("segmentSize is too small");
+        }
+        if (msSnapshotInterval <= 0) {
+            throw new IllegalArgumentException("msSnapshotInterval is less or equal to zero");
+        }
+
+        // unique across restarts, unless more than 1000 games per millisecond are started
+        this.nextGameId = new AtomicLong(System.currentTimeMillis() * 1000);
+        this.ring = new RecordRing(RING_CAPACITY);
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.records = metrics.counter("journal.records");
+        this.dropped = metrics.counter("journal.dropped");
+        metrics.gauge("journal.backlog", ring::size);
+        this.games = new ConcurrentHashMap<>();
+        metrics.gauge("journal.games", games::size);
+
+        Files.createDirectories(dir);
+        this.segmentIndex = lastSegmentIndex(dir);
+        openNextSegment();
+
+        this.writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        this.snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        snapshotter.scheduleWithFixedDelay(this::checkpoint, msSnapshotInterval, msSnapshotInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records the start of a game
+     *
+     * @param snapshot Writes the state of the game with snapshot(), grid(), shots() and session(). Called by the
+     *                 snapshot thread until the end of the game is recorded
+     * @return The id of the new game
+     */
+    public long newGame(Runnable snapshot) {
+        long gameId = nextGameId.incrementAndGet();
+        // registered before MATCH, so a checkpoint that follows MATCH always includes the game
+        if (games != null)
+            games.put(gameId, snapshot);
+        append(MATCH, gameId, 0, 0, 0);
+        return gameId;
+    }
+
+    /**
+     * Adds to the snapshots a game recovered from the journal, nothing is recorded
+     *
+     * @param gameId   The id of the recovered game
+     * @param snapshot Writes the state of the game, see newGame()
+     */
+    public void resumeGame(long gameId, Runnable snapshot) {
+        if (games != null)
+            games.put(gameId, snapshot);
+    }
+
+    /**
+     * Records a grid accepted
+     *
+     * @param player 1 for the player with the first turn, 2 for the other
+     */
+    public void grid(long gameId, int player, long maskLo, long maskHi) {
+        append(GRID, gameId, player, maskLo, maskHi);
+    }
+
+    /**
+     * Records a shot and its result
+     *
+     * @param player The player that shot
+     * @param cell   Index of the cell, see Board
+     */
+    public void shot(long gameId, int player, int cell, Shot result) {
+        byte code = result == Shot.HIT ? SHOT_HIT : result == Shot.SANK ? SHOT_SANK : SHOT_OCEAN;
+        append(SHOT, gameId, player | cell << 8 | code << 16, 0, 0);
+    }
+
+    /**
+     * Records the end of a game
+     *
+     * @param winner The player that won
+     * @param reason END_WIN or END_OPPONENT_DC
+     */
+    public void end(long gameId, int winner, byte reason) {
+        append(END, gameId, reason | winner << 8, 0, 0);
+        if (games != null)
+            games.remove(gameId);
+    }
+
+    /**
+     * Records the session token of a player
+     */
+    public void session(long gameId, int player, long token) {
+        append(SESSION, gameId, player, token, 0);
+    }
+
+    /**
+     * Starts the snapshot of a game, followed by its grids, shots and sessions
+     *
+     * @param currentPlayer The player of the current turn
+     */
+    public void snapshot(long gameId, int currentPlayer) {
+        append(SNAPSHOT, gameId, currentPlayer, 0, 0);
+    }
+
+    /**
+     * Records all the cells shot by a player, in a snapshot
+     */
+    public void shots(long gameId, int player, long maskLo, long maskHi) {
+        append(SHOTS, gameId, player, maskLo, maskHi);
+    }
+
+    /**
+     * Writes the snapshot of every live game. The checkpoint is complete only if no record was dropped.
+     * The ring is kept half empty, so the snapshots never push out the records of the games
+     */
+    private void checkpoint() {
+        try {
+            long droppedBefore = dropped.sum();
+            append(CHECKPOINT, 0, 0, 0, 0);
+            for (Runnable snapshot : games.values()) {
+                while (ring.size() > RING_CAPACITY / 2 && !isClosed) {
+                    LockSupport.parkNanos(DRAIN_PARK_NS);
+                }
+                snapshot.run();
+            }
+            if (dropped.sum() == droppedBefore)
+                append(CHECKPOINT_DONE, 0, 0, 0, 0);
+        } catch (Exception e) {
+            // an exception would cancel the scheduled task
+            System.out.println("[!] An exception was thrown while writing the snapshots of the games");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The type and the small arguments are packed in the first long, the masks and the token in the last two
+     */
+    private void append(byte type, long gameId, int args, long maskLo, long maskHi) {
+        if (ring == null)
+            return;
+
+        if (!ring.offer(type | (long) args << 8, System.currentTimeMillis(), gameId, maskLo, maskHi)) {
+            dropped.increment();
+        } else if (isWriterParked) {
+            isWriterParked = false;
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Stops the writer after it wrote all the records, and flushes the segment to disk
+     *
+     * @throws InterruptedException If interrupted while waiting for the writer
+     */
+    public void close() throws InterruptedException {
+        if (writer == null)
+            return;
+
+        snapshotter.shutdownNow();
+        isClosed = true;
+        LockSupport.unpark(writer);
+        writer.join();
+    }
+
+    private void writeLoop() {
+        long[] record = new long[RecordRing.RECORD_LONGS];
+        long lastForce = System.currentTimeMillis();
+        boolean isDirty = false;
+
+        while (!isClosed || ring.size() > 0) {
+            if (ring.poll(record)) {
+                try {
+                    write(record);
+                    records.increment();
+                    isDirty = true;
+                    onCheckpoint((byte) record[0]);
+                } catch (IOException e) {
+                    System.out.println("[!] An exception was thrown while opening a journal segment, the record is lost");
+                    e.printStackTrace();
+                    dropped.increment();
+                }
+                continue;
+            }
+
+            long currentTime = System.currentTimeMillis();
+            if (isDirty && currentTime - lastForce >= FORCE_DELAY) {
+                segment.force();
+                isDirty = false;
+                lastForce = currentTime;
+            }
+
+            // the flag is set before the ring is checked again: either append() sees it, or the writer sees the record
+            isWriterParked = true;
+            if (ring.size() == 0 && !isClosed) {
+                if (isDirty)
+                    LockSupport.parkNanos(this, (FORCE_DELAY - (currentTime - lastForce)) * 1_000_000L);
+                else
+                    LockSupport.park(this);
+            }
+            isWriterParked = false;
+        }
+        segment.force();
+    }
+
+    /**
+     * Deletes the segments before the last checkpoint when it's complete
+     *
+     * @param type Type of the record just written
+     */
+    private void onCheckpoint(byte type) {
+        if (type == CHECKPOINT) {
+            checkpointSegment = segmentIndex;
+        } else if (type == CHECKPOINT_DONE && checkpointSegment > 0) {
+            deleteSegmentsBefore(checkpointSegment);
+            checkpointSegment = 0;
+        }
+    }
+
+    private void deleteSegmentsBefore(int index) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "journal-*.seg")) {
+            for (Path file : files) {
+                int i = segmentIndex(file);
+                if (i > 0 && i < index)
+                    Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            System.out.println("[!] An exception was thrown while deleting the old journal segments");
+            e.printStackTrace();
+        }
+    }
+
+    private void write(long[] record) throws IOException {
+        byte type = (byte) record[0];
+        int args = (int) (record[0] >>> 8);
+        if (segment.remaining() < recordSize(type))
+            openNextSegment();
+
+        // the type is written last
+        int start = segment.position();
+        segment.position(start + 1);
+        segment.putLong(record[1]);
+        segment.putLong(record[2]);
+        switch (type) {
+            case GRID:
+            case SHOTS:
+                segment.put((byte) args);
+                segment.putLong(record[3]);
+                segment.putLong(record[4]);
+                break;
+            case SHOT:
+                segment.put((byte) args);
+                segment.put((byte) (args >> 8));
+                segment.put((byte) (args >> 16));
+                break;
+            case END:
+                segment.put((byte) args);
+                segment.put((byte) (args >> 8));
+                break;
+            case SESSION:
+                segment.put((byte) args);
+                segment.putLong(record[3]);
+                break;
+            case SNAPSHOT:
+                segment.put((byte) args);
+                break;
+        }
+        segment.put(start, type);
+    }
+
+    /**
+     * @return Size in bytes of a record of the type, or -1 if the type is unknown
+     */
+    static int recordSize(byte type) {
+        switch (type) {
+            case MATCH:
+            case CHECKPOINT:
+            case CHECKPOINT_DONE:
+                return RECORD_BASE_SIZE;
+            case GRID:
+            case SHOTS:
+                return RECORD_BASE_SIZE + 1 + 16;
+            case SHOT:
+                return RECORD_BASE_SIZE + 3;
+            case END:
+                return RECORD_BASE_SIZE + 2;
+            case SESSION:
+                return RECORD_BASE_SIZE + 1 + 8;
+            case SNAPSHOT:
+                return RECORD_BASE_SIZE + 1;
+            default:
+                return -1;
+        }
+    }
+
+    private void openNextSegment() throws IOException {
+        if (segment != null)
+            segment.force();
+
+        Path file = segmentPath(dir, ++segmentIndex);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+    }
+
+    /**
+     * @return Path of the segment with the given index
+     */
+    public static Path segmentPath(Path dir, int index) {
+        return dir.resolve(String.format("journal-%06d.seg", index));
+    }
+
+    /**
+     * @return Index of the last segment in the directory, 0 if there's none
+     */
+    public static int lastSegmentIndex(Path dir) throws IOException {
+        int last = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "journal-*.seg")) {
+            for (Path file : files) {
+                last = Math.max(last, segmentIndex(file));
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return Index of the segment file, 0 if its name isn't "journal-NNNNNN.seg"
+     */
+    private static int segmentIndex(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Math.max(0, Integer.parseInt(name.substring(8, name.length() - 4)));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
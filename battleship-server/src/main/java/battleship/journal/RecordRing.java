@@ -0,0 +1,95 @@
+package battleship.journal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of journal records, with many producers and a single consumer.
+ * <p>
+ * Every slot holds RECORD_LONGS longs and a sequence number: a producer claims a position with compare-and-set,
+ * writes the record and publishes it by setting the sequence, the consumer frees the slot in the same way.
+ * Producers never wait: when the ring is full the record is rejected.
+ */
+class RecordRing {
+    static final int RECORD_LONGS = 5;
+
+    private final int mask;
+    private final long[] records;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail;
+    /**
+     * Next position to read. Used only by the consumer
+     */
+    private volatile long head;
+
+    /**
+     * @param capacity Max records in the ring, a power of two
+     * @throws IllegalArgumentException If capacity isn't a positive power of two
+     */
+    RecordRing(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity isn't a positive power of two");
+        }
+
+        this.mask = capacity - 1;
+        this.records = new long[capacity * RECORD_LONGS];
+        this.sequences = new AtomicLongArray(capacity);
+        this.tail = new AtomicLong();
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds a record. Can be called by any thread
+     *
+     * @return false if the ring is full
+     */
+    boolean offer(long l0, long l1, long l2, long l3, long l4) {
+        long position;
+        while (true) {
+            position = tail.get();
+            long available = sequences.get((int) position & mask) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1))
+                    break;
+            } else if (available < 0) {
+                return false;
+            }
+        }
+
+        int slot = (int) position & mask;
+        int i = slot * RECORD_LONGS;
+        records[i] = l0;
+        records[i + 1] = l1;
+        records[i + 2] = l2;
+        records[i + 3] = l3;
+        records[i + 4] = l4;
+        sequences.lazySet(slot, position + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest record. Must be called only by the consumer thread
+     *
+     * @param out Array of RECORD_LONGS longs where the record is copied
+     * @return false if there's no record published
+     */
+    boolean poll(long[] out) {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1)
+            return false;
+
+        System.arraycopy(records, slot * RECORD_LONGS, out, 0, RECORD_LONGS);
+        sequences.lazySet(slot, head + mask + 1);
+        head++;
+        return true;
+    }
+
+    /**
+     * @return Approximate number of records in the ring
+     */
+    long size() {
+        return Math.max(0, tail.get() - head);
+    }
+}
@@ -0,0 +1,89 @@
+package battleship.journal;
+
+/**
+ * State of a game rebuilt from the journal. Players are numbered 1 (first turn) and 2, as in the journal.
+ */
+public class RecoveredGame {
+    private final long gameId;
+    private int currentPlayer;
+    private final boolean[] hasGrid = new boolean[3];
+    private final long[] fleetLo = new long[3], fleetHi = new long[3];
+    private final long[] shotLo = new long[3], shotHi = new long[3];
+    private final long[] token = new long[3];
+
+    RecoveredGame(long gameId, int currentPlayer) {
+        this.gameId = gameId;
+        this.currentPlayer = currentPlayer;
+    }
+
+    void grid(int player, long lo, long hi) {
+        hasGrid[player] = true;
+        fleetLo[player] = lo;
+        fleetHi[player] = hi;
+    }
+
+    /**
+     * A new shot, the turn passes to the other player
+     */
+    void shot(int player, long lo, long hi) {
+        shotLo[player] |= lo;
+        shotHi[player] |= hi;
+        currentPlayer = 3 - player;
+    }
+
+    void shots(int player, long lo, long hi) {
+        shotLo[player] = lo;
+        shotHi[player] = hi;
+    }
+
+    void session(int player, long token) {
+        this.token[player] = token;
+    }
+
+    public long getGameId() {
+        return gameId;
+    }
+
+    /**
+     * @return The player of the current turn
+     */
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    /**
+     * @return true if the grid of the player was accepted
+     */
+    public boolean hasGrid(int player) {
+        return hasGrid[player];
+    }
+
+    /**
+     * @return Low bits of the mask of the player ships cells
+     */
+    public long getFleetLo(int player) {
+        return fleetLo[player];
+    }
+
+    public long getFleetHi(int player) {
+        return fleetHi[player];
+    }
+
+    /**
+     * @return Low bits of the mask of the cells shot by the player
+     */
+    public long getShotLo(int player) {
+        return shotLo[player];
+    }
+
+    public long getShotHi(int player) {
+        return shotHi[player];
+    }
+
+    /**
+     * @return The session token of the player, 0 if it wasn't recorded
+     */
+    public long getToken(int player) {
+        return token[player];
+    }
+}
@@ -0,0 +1,151 @@
+package battleship.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rebuilds the games that were still running when the server stopped.
+ * <p>
+ * The segments are searched backwards for the last complete checkpoint, then the records are replayed from its
+ * CHECKPOINT: the snapshots give the state of the games that were running, the following records bring them up to date.
+ * Without a complete checkpoint all the segments are replayed.
+ */
+public final class Recovery {
+    private Recovery() {
+    }
+
+    /**
+     * @param dir Directory of the journal segments
+     * @return The games without an END record
+     * @throws IOException If a segment couldn't be read, or isn't a journal segment
+     */
+    public static Collection<RecoveredGame> read(Path dir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (Files.isDirectory(dir)) {
+            int last = Journal.lastSegmentIndex(dir);
+            for (int i = 1; i <= last; i++) {
+                Path segment = Journal.segmentPath(dir, i);
+                if (Files.exists(segment))
+                    segments.add(segment);
+            }
+        }
+
+        // position of the CHECKPOINT of the last complete checkpoint
+        int startSegment = 0, startPosition = Journal.HEADER_SIZE;
+        boolean isDoneFound = false;
+        search:
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            MappedByteBuffer segment = map(segments.get(i));
+            List<Integer> markers = new ArrayList<>();
+            for (int position = record(segment, Journal.HEADER_SIZE); position >= 0; position = next(segment, position)) {
+                byte type = segment.get(position);
+                if (type == Journal.CHECKPOINT || type == Journal.CHECKPOINT_DONE)
+                    markers.add(position);
+            }
+
+            for (int j = markers.size() - 1; j >= 0; j--) {
+                byte type = segment.get(markers.get(j));
+                if (type == Journal.CHECKPOINT_DONE) {
+                    isDoneFound = true;
+                } else if (isDoneFound) {
+                    startSegment = i;
+                    startPosition = markers.get(j);
+                    break search;
+                }
+            }
+        }
+
+        Map<Long, RecoveredGame> games = new LinkedHashMap<>();
+        for (int i = startSegment; i < segments.size(); i++) {
+            MappedByteBuffer segment = map(segments.get(i));
+            int position = record(segment, i == startSegment ? startPosition : Journal.HEADER_SIZE);
+            for (; position >= 0; position = next(segment, position)) {
+                replay(segment, position, games);
+            }
+        }
+        return games.values();
+    }
+
+    private static void replay(MappedByteBuffer segment, int position, Map<Long, RecoveredGame> games) {
+        byte type = segment.get(position);
+        long gameId = segment.getLong(position + 1 + 8);
+        int body = position + 1 + 8 + 8;
+
+        if (type == Journal.MATCH) {
+            games.put(gameId, new RecoveredGame(gameId, 1));
+            return;
+        }
+        if (type == Journal.SNAPSHOT) {
+            games.put(gameId, new RecoveredGame(gameId, segment.get(body)));
+            return;
+        }
+        if (type == Journal.END) {
+            games.remove(gameId);
+            return;
+        }
+
+        // records of games that ended, or started before the checkpoint and ended before their snapshot
+        RecoveredGame game = games.get(gameId);
+        if (game == null)
+            return;
+
+        int player = segment.get(body);
+        if (player != 1 && player != 2)
+            return;
+        switch (type) {
+            case Journal.GRID:
+                game.grid(player, segment.getLong(body + 1), segment.getLong(body + 9));
+                break;
+            case Journal.SHOTS:
+                game.shots(player, segment.getLong(body + 1), segment.getLong(body + 9));
+                break;
+            case Journal.SHOT:
+                int cell = segment.get(body + 1);
+                game.shot(player, cell < 64 ? 1L << cell : 0, cell < 64 ? 0 : 1L << (cell - 64));
+                break;
+            case Journal.SESSION:
+                game.session(player, segment.getLong(body + 1));
+                break;
+        }
+    }
+
+    /**
+     * @return Position of the record after the one at position, or -1 if it's the last one
+     */
+    private static int next(MappedByteBuffer segment, int position) {
+        return record(segment, position + Journal.recordSize(segment.get(position)));
+    }
+
+    /**
+     * @return position if a complete record starts there, otherwise -1: the rest of the segment is empty
+     */
+    private static int record(MappedByteBuffer segment, int position) {
+        if (position >= segment.limit())
+            return -1;
+
+        int size = Journal.recordSize(segment.get(position));
+        return size > 0 && position + size <= segment.limit() ? position : -1;
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        MappedByteBuffer segment;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (segment.limit() < Journal.HEADER_SIZE || segment.getInt(0) != Journal.MAGIC)
+            throw new IOException(file + " isn't a journal segment");
+        if (segment.getInt(4) != Journal.VERSION)
+            throw new IOException(file + " has an unsupported version");
+        return segment;
+    }
+}
@@ -0,0 +1,150 @@
+package battleship.metrics;
+
+import battleship.util.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the server metrics, by name.
+ * <p>
+ * Counters are LongAdders and histograms are lock-free, so they can be updated by any thread without contention.
+ * Components look up their metrics once, when they are created, and keep the references.
+ * Gauges are read only when the metrics are reported.
+ */
+public class Metrics {
+    /**
+     * Connections accepted
+     */
+    public static final String CONNECTIONS = "connections";
+    /**
+     * Pairs of players matched
+     */
+    public static final String MATCHES = "matches";
+    public static final String GAMES_STARTED = "games.started";
+    /**
+     * Games ended with a winner
+     */
+    public static final String GAMES_FINISHED = "games.finished";
+    /**
+     * Players that disconnected during a game, each one ends its game
+     */
+    public static final String DISCONNECTS = "disconnects";
+    /**
+     * Games started against a bot, they're also counted in GAMES_STARTED
+     */
+    public static final String BOT_GAMES = "games.bot";
+
+    public static final String QUEUE_LENGTH = "queue.length";
+    public static final String BOOTSTRAP_QUEUE_LENGTH = "games.toStart";
+    public static final String ACTIVE_GAMES = "games.active";
+
+    /**
+     * Time waited by a player for an opponent
+     */
+    public static final String QUEUE_WAIT_MS = "queue.wait.ms";
+    public static final String GRID_VALIDATION_NS = "grid.validation.ns";
+    /**
+     * Time to handle a shot, without sending the answers
+     */
+    public static final String SHOT_NS = "shot.ns";
+    /**
+     * Time from the game creation to its end
+     */
+    public static final String GAME_DURATION_MS = "game.duration.ms";
+    /**
+     * Time taken by a bot to choose a shot
+     */
+    public static final String BOT_MOVE_NS = "bot.move.ns";
+    /**
+     * Fleets sampled by a sampling bot to choose a shot, less than bot.samples when the move ran out of time
+     */
+    public static final String BOT_SAMPLES = "bot.samples";
+    /**
+     * Bot moves found in the opening book, and computed because they weren't there
+     */
+    public static final String BOOK_HITS = "bot.book.hits";
+    public static final String BOOK_MISSES = "bot.book.misses";
+    /**
+     * Time the bots would have spent computing the moves found in the book
+     */
+    public static final String BOOK_SAVED_NS = "bot.book.saved.ns";
+    public static final String BOOK_SIZE = "bot.book.size";
+    public static final String BOOK_HIT_PERCENT = "bot.book.hitPercent";
+
+    /**
+     * Registry used by the components created without one: its metrics are recorded but never reported
+     */
+    public static final Metrics DETACHED = new Metrics();
+
+    private final ConcurrentMap<String, LongAdder> counters;
+    private final ConcurrentMap<String, LongSupplier> gauges;
+    private final ConcurrentMap<String, Histogram> histograms;
+
+    public Metrics() {
+        this.counters = new ConcurrentHashMap<>();
+        this.gauges = new ConcurrentHashMap<>();
+        this.histograms = new ConcurrentHashMap<>();
+
+        LongAdder started = counter(GAMES_STARTED), finished = counter(GAMES_FINISHED), disconnects = counter(DISCONNECTS);
+        gauge(ACTIVE_GAMES, () -> started.sum() - finished.sum() - disconnects.sum());
+    }
+
+    /**
+     * @param name Name of the counter
+     * @return The counter, created if it doesn't exist
+     */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * @param name Name of the histogram
+     * @return The histogram, created if it doesn't exist
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * Registers a gauge, replacing the one with the same name
+     *
+     * @param name  Name of the gauge
+     * @param value Function that reads the current value. Called by the reporting thread
+     * @throws IllegalArgumentException If value is null
+     */
+    public void gauge(String name, LongSupplier value) throws IllegalArgumentException {
+        if (value == null)
+            throw new IllegalArgumentException("Gauge value is null");
+
+        gauges.put(name, value);
+    }
+
+    /**
+     * @param name Name of the gauge
+     * @return The current value, 0 if the gauge doesn't exist
+     */
+    public long getGauge(String name) {
+        LongSupplier value = gauges.get(name);
+        return value == null ? 0 : value.getAsLong();
+    }
+
+    /**
+     * @return One line with all the counters, one with all the gauges and one for each histogram
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[*]");
+        new TreeMap<>(counters).forEach((name, counter) -> sb.append(' ').append(name).append('=').append(counter.sum()));
+        sb.append(System.lineSeparator()).append("[*]");
+        new TreeMap<>(gauges).forEach((name, gauge) -> sb.append(' ').append(name).append('=').append(gauge.getAsLong()));
+        for (Map.Entry<String, Histogram> e : new TreeMap<>(histograms).entrySet()) {
+            sb.append(System.lineSeparator()).append("[*] ").append(e.getKey()).append(": ").append(e.getValue());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package battleship.net;
+
+/**
+ * A connected player as seen by the game logic, independent of the I/O model that serves it.
+ */
+public interface Connection {
+    /**
+     * Print a message in the output stream and flush it
+     *
+     * @param msg The message to be printed
+     * @throws IllegalArgumentException If argument is null
+     */
+    void println(String msg) throws IllegalArgumentException;
+
+    /**
+     * Print a message in the output stream without sending it until flush() is called
+     *
+     * @param msg The message to be printed
+     * @throws IllegalArgumentException If argument is null
+     */
+    void queue(String msg) throws IllegalArgumentException;
+
+    /**
+     * Send all the queued messages, usually with a single write
+     */
+    void flush();
+
+    /**
+     * Returns whether or not, the connection has been closed.
+     *
+     * @return true if the connection is closed, false otherwise.
+     */
+    boolean isClosed();
+
+    /**
+     * Close the connection and send a disconnect message to System.out stream
+     */
+    void disconnect();
+
+    /**
+     * @return Time in milliseconds of the last message received
+     */
+    long getLastBeat();
+
+    /**
+     * Gets remote Address and port of the connection
+     * @return Socket address and port formatted into a string
+     */
+    String getSocketInfo();
+}
@@ -0,0 +1,47 @@
+package battleship.net;
+
+/**
+ * Placeholder of a player that has no connection, like the players of a game recovered after a restart
+ * until they resume it. Messages are dropped and it's never closed.
+ */
+public class DetachedConnection implements Connection {
+    public static final DetachedConnection INSTANCE = new DetachedConnection();
+
+    private DetachedConnection() {
+    }
+
+    @Override
+    public void println(String msg) throws IllegalArgumentException {
+        queue(msg);
+    }
+
+    @Override
+    public void queue(String msg) throws IllegalArgumentException {
+        if (msg == null) {
+            throw new IllegalArgumentException("Message is null");
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    @Override
+    public void disconnect() {
+    }
+
+    @Override
+    public long getLastBeat() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public String getSocketInfo() {
+        return "detached";
+    }
+}
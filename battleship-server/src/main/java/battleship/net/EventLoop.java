@@ -0,0 +1,92 @@
+package battleship.net;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Single thread that serves many non-blocking connections with one Selector.
+ * Other threads interact with the loop only by submitting tasks through execute().
+ */
+class EventLoop implements Runnable {
+    private final Selector selector;
+    /**
+     * Tasks submitted by other threads, run by the loop thread in FIFO order
+     */
+    private final Queue<Runnable> tasks;
+
+    EventLoop() throws IOException {
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Runs the task on the loop thread as soon as possible
+     *
+     * @param task The task to run
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Registers the client channel on this loop selector
+     *
+     * @param client Client to serve
+     */
+    void register(NioClient client) {
+        execute(() -> {
+            try {
+                client.register(selector);
+            } catch (ClosedChannelException e) {
+                client.disconnect();
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                selector.select();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+
+                    NioClient client = (NioClient) key.attachment();
+                    if (key.isValid() && key.isReadable())
+                        client.handleRead();
+                    if (key.isValid() && key.isWritable())
+                        client.handleWrite();
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            } catch (Exception e) {
+                // An error of one client shouldn't stop the whole loop
+                e.printStackTrace();
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            ((NioClient) key.attachment()).disconnect();
+        }
+    }
+
+    static void configure(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+    }
+}
@@ -0,0 +1,16 @@
+package battleship.net;
+
+/**
+ * Handles the first message of a new connection, before it's handed to the game logic.
+ */
+public interface Greeter {
+    /**
+     * Called once, on the thread that reads the connection, with the first message received. PING messages included.
+     * A connection closed before sending anything is never greeted.
+     *
+     * @param connection The connection
+     * @param msg        The first message received
+     * @return true if the message was consumed, false if it must be delivered as usual
+     */
+    boolean onFirstMessage(Connection connection, String msg);
+}
@@ -0,0 +1,19 @@
+package battleship.net;
+
+/**
+ * Receives the events of an event-driven connection.
+ * Events of the same connection are never delivered concurrently.
+ */
+public interface MessageListener {
+    /**
+     * Called for every complete message received. PING messages aren't delivered.
+     *
+     * @param msg The message without the line terminator
+     */
+    void onMessage(String msg);
+
+    /**
+     * Called once when the connection is closed, by either side or by the heartbeat manager.
+     */
+    void onClose();
+}
@@ -0,0 +1,357 @@
+package battleship.net;
+
+import battleship.util.BinaryProtocol;
+import battleship.util.LineReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking client served by an EventLoop.
+ * Incoming bytes are split on '\n', or in binary frames if the first byte received is BinaryProtocol.MAGIC,
+ * and every complete message is dispatched to the MessageListener.
+ * Outgoing messages are encoded in an output buffer and written by the loop thread when the channel is writable.
+ */
+public class NioClient implements Connection {
+    /**
+     * Longest message accepted. The longest protocol message is the grid (55 characters)
+     */
+    private static final int MAX_LINE_LENGTH = 1024;
+    private static final byte[] PING = "PING".getBytes(StandardCharsets.US_ASCII);
+
+    private final SocketChannel channel;
+    private final EventLoop loop;
+    private final String socketInfo;
+    private SelectionKey key;
+    private volatile long lastBeat;
+    private final AtomicBoolean isClosed;
+    /**
+     * Bytes read but not yet terminated by '\n'
+     */
+    private final ByteBuffer inBuffer;
+    /**
+     * Encoded messages waiting to be written, in write mode. Guarded by outLock
+     */
+    private ByteBuffer outBuffer;
+    private final Object outLock;
+    /**
+     * False until the first byte is received. Written by the loop thread under outLock
+     */
+    private boolean isHandshakeDone;
+    private boolean isBinary;
+    /**
+     * Messages printed before the handshake. Guarded by outLock
+     */
+    private List<String> pendingOut;
+    private final AtomicBoolean isFlushScheduled;
+    private volatile MessageListener listener;
+    /**
+     * Messages received before a listener was set. Only accessed by the loop thread
+     */
+    private final Queue<String> pending;
+    /**
+     * Receives the first message, null once it's called. Only accessed by the loop thread
+     */
+    private Greeter greeter;
+
+    /**
+     * @param channel              Accepted client channel
+     * @param loop                 Loop that serves this client
+     * @param initialTimeoutOffset time in milliseconds added to the currentTime to ensure stability on initial connection Setup
+     * @param greeter              Handles the first message, can be null
+     * @throws IOException If the channel couldn't be configured
+     */
+    NioClient(SocketChannel channel, EventLoop loop, long initialTimeoutOffset, Greeter greeter) throws IOException {
+        EventLoop.configure(channel);
+
+        this.channel = channel;
+        this.loop = loop;
+        this.socketInfo = channel.getRemoteAddress().toString();
+        this.lastBeat = System.currentTimeMillis() + initialTimeoutOffset;
+        this.isClosed = new AtomicBoolean(false);
+        this.inBuffer = ByteBuffer.allocate(MAX_LINE_LENGTH);
+        this.outBuffer = ByteBuffer.allocate(MAX_LINE_LENGTH);
+        this.outLock = new Object();
+        this.pendingOut = new ArrayList<>();
+        this.isFlushScheduled = new AtomicBoolean(false);
+        this.pending = new ArrayDeque<>();
+        this.greeter = greeter;
+    }
+
+    void register(Selector selector) throws ClosedChannelException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Sets the listener that receives all the following messages.
+     * Messages received while no listener was set are delivered first.
+     *
+     * @param listener The listener
+     */
+    public void setListener(MessageListener listener) {
+        loop.execute(() -> {
+            this.listener = listener;
+            while (!pending.isEmpty()) {
+                listener.onMessage(pending.poll());
+            }
+            if (isClosed())
+                listener.onClose();
+        });
+    }
+
+    /**
+     * Reads the available bytes and dispatches every complete message. Called by the loop thread.
+     */
+    void handleRead() {
+        int read;
+        try {
+            read = channel.read(inBuffer);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            disconnect();
+            return;
+        }
+
+        if (!isHandshakeDone && inBuffer.position() > 0)
+            acceptHandshake();
+
+        if (isBinary)
+            readFrames();
+        else
+            readLines();
+    }
+
+    /**
+     * Chooses the protocol from the first byte received, and encodes the messages printed until now
+     */
+    private void acceptHandshake() {
+        boolean binary = inBuffer.get(0) == BinaryProtocol.MAGIC;
+        if (binary) {
+            inBuffer.flip();
+            inBuffer.get();
+            inBuffer.compact();
+        }
+
+        synchronized (outLock) {
+            isBinary = binary;
+            isHandshakeDone = true;
+            for (String msg : pendingOut) {
+                append(msg);
+            }
+            pendingOut = null;
+        }
+        flush();
+    }
+
+    private void readLines() {
+        int start = 0;
+        for (int i = 0; i < inBuffer.position(); i++) {
+            if (inBuffer.get(i) == '\n') {
+                int end = (i > start && inBuffer.get(i - 1) == '\r') ? i - 1 : i;
+
+                lastBeat = System.currentTimeMillis();
+                // PING is only a heartbeat, it's never decoded unless it's the first message
+                if (greeter != null)
+                    greet(LineReader.toMessage(inBuffer.array(), start, end));
+                else if (!startsWith(inBuffer, start, end, PING))
+                    dispatch(LineReader.toMessage(inBuffer.array(), start, end));
+                start = i + 1;
+                if (isClosed())
+                    return;
+            }
+        }
+
+        // keep the partial message at the start of the buffer
+        inBuffer.flip();
+        inBuffer.position(start);
+        inBuffer.compact();
+
+        if (!inBuffer.hasRemaining()) {
+            System.out.println(String.format("[!] '%s' sent a message longer than %d bytes", socketInfo, MAX_LINE_LENGTH));
+            disconnect();
+        }
+    }
+
+    private void readFrames() {
+        inBuffer.flip();
+        while (inBuffer.hasRemaining()) {
+            byte opcode = inBuffer.get(inBuffer.position());
+            String msg;
+            try {
+                msg = BinaryProtocol.decode(inBuffer);
+            } catch (IllegalArgumentException e) {
+                System.out.println(String.format("[!] '%s' sent an invalid frame", socketInfo));
+                disconnect();
+                return;
+            }
+            if (msg == null)
+                break;
+
+            lastBeat = System.currentTimeMillis();
+            if (greeter != null)
+                greet(msg);
+            else if (opcode != BinaryProtocol.PING)
+                dispatch(msg);
+            if (isClosed())
+                return;
+        }
+
+        // keep the partial frame at the start of the buffer
+        inBuffer.compact();
+    }
+
+    private static boolean startsWith(ByteBuffer buf, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length)
+            return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf.get(start + i) != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void greet(String msg) {
+        Greeter g = greeter;
+        greeter = null;
+        if (!g.onFirstMessage(this, msg) && !msg.startsWith("PING"))
+            dispatch(msg);
+    }
+
+    private void dispatch(String msg) {
+        MessageListener l = listener;
+        if (l != null)
+            l.onMessage(msg);
+        else
+            pending.add(msg);
+    }
+
+    /**
+     * Writes the queued messages until the socket buffer is full. Called by the loop thread.
+     */
+    void handleWrite() {
+        isFlushScheduled.set(false);
+        if (key == null || !key.isValid())
+            return;
+
+        boolean failed = false;
+        synchronized (outLock) {
+            if (outBuffer.position() == 0)
+                return;
+
+            try {
+                outBuffer.flip();
+                channel.write(outBuffer);
+                key.interestOps(outBuffer.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            } catch (IOException e) {
+                failed = true;
+            } finally {
+                outBuffer.compact();
+            }
+        }
+
+        // disconnect outside the lock since listeners may write on other clients
+        if (failed)
+            disconnect();
+    }
+
+    @Override
+    public void println(String msg) throws IllegalArgumentException {
+        queue(msg);
+        flush();
+    }
+
+    @Override
+    public void queue(String msg) throws IllegalArgumentException {
+        if (msg == null) {
+            throw new IllegalArgumentException("Message is null");
+        }
+        if (isClosed())
+            return;
+
+        synchronized (outLock) {
+            if (!isHandshakeDone) {
+                // sent when the protocol is known
+                pendingOut.add(msg);
+                return;
+            }
+            append(msg);
+        }
+    }
+
+    /**
+     * Schedules the write of the queued messages on the loop thread.
+     * Messages queued before the write runs are sent with it
+     */
+    @Override
+    public void flush() {
+        if (isFlushScheduled.compareAndSet(false, true))
+            loop.execute(this::handleWrite);
+    }
+
+    /**
+     * Encodes a message in the output buffer. Called under outLock
+     */
+    private void append(String msg) {
+        int length = isBinary ? BinaryProtocol.MAX_FRAME_LENGTH : msg.length() + 1;
+        if (outBuffer.remaining() < length) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(outBuffer.capacity() * 2, outBuffer.position() + length));
+            outBuffer.flip();
+            bigger.put(outBuffer);
+            outBuffer = bigger;
+        }
+
+        if (isBinary) {
+            BinaryProtocol.encode(msg, outBuffer);
+        } else {
+            // messages are ASCII, chars are encoded straight into the output buffer
+            for (int i = 0; i < msg.length(); i++) {
+                outBuffer.put((byte) msg.charAt(i));
+            }
+            outBuffer.put((byte) '\n');
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return isClosed.get();
+    }
+
+    @Override
+    public void disconnect() {
+        if (!isClosed.compareAndSet(false, true))
+            return;
+
+        System.out.println(String.format("[*] '%s' disconnected", getSocketInfo()));
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+        }
+
+        MessageListener l = listener;
+        if (l != null)
+            l.onClose();
+    }
+
+    @Override
+    public long getLastBeat() {
+        return lastBeat;
+    }
+
+    @Override
+    public String getSocketInfo() {
+        return socketInfo;
+    }
+}
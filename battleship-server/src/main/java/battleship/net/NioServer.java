@@ -0,0 +1,98 @@
+package battleship.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+/**
+ * Server that serves all the connections with a fixed number of EventLoop threads instead of one thread per client.
+ */
+public class NioServer {
+    private final EventLoop[] loops;
+    private final long initialTimeoutOffset;
+    /**
+     * Index of the loop of the next client. Guarded by this
+     */
+    private int nextLoop;
+
+    /**
+     * Creates and starts the event loops
+     *
+     * @param nLoops               Number of event loop threads
+     * @param initialTimeoutOffset time in milliseconds given to every new client to send its first message
+     * @throws IllegalArgumentException If nLoops is less than one
+     * @throws IOException              If a selector couldn't be opened
+     */
+    public NioServer(int nLoops, long initialTimeoutOffset) throws IllegalArgumentException, IOException {
+        if (nLoops < 1) {
+            throw new IllegalArgumentException("nLoops is less than one");
+        }
+
+        this.loops = new EventLoop[nLoops];
+        this.initialTimeoutOffset = initialTimeoutOffset;
+        this.nextLoop = 0;
+
+        for (int i = 0; i < nLoops; i++) {
+            loops[i] = new EventLoop();
+            Thread t = new Thread(loops[i], "event-loop-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Accepts connections forever on the calling thread. The accepted channels aren't served until serve() is called
+     *
+     * @param port     Port to listen on
+     * @param onAccept Called on the calling thread for every new channel, still in blocking mode
+     * @throws IOException If the server channel couldn't be opened
+     */
+    public void listen(int port, Consumer<SocketChannel> onAccept) throws IOException {
+        ServerSocketChannel listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(port));
+
+        while (true) {
+            onAccept.accept(listener.accept());
+        }
+    }
+
+    /**
+     * Starts serving an accepted channel. The client is assigned to a loop in round-robin. Can be called by any thread
+     *
+     * @param channel Accepted channel
+     * @return The client, or null if the channel couldn't be configured. In that case it's closed
+     */
+    public NioClient serve(SocketChannel channel) {
+        return serve(channel, null);
+    }
+
+    /**
+     * Starts serving an accepted channel. The client is assigned to a loop in round-robin. Can be called by any thread
+     *
+     * @param channel Accepted channel
+     * @param greeter Handles the first message of the client, can be null
+     * @return The client, or null if the channel couldn't be configured. In that case it's closed
+     */
+    public NioClient serve(SocketChannel channel, Greeter greeter) {
+        try {
+            EventLoop loop;
+            synchronized (this) {
+                loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+            }
+
+            NioClient c = new NioClient(channel, loop, initialTimeoutOffset, greeter);
+            loop.register(c);
+            return c;
+        } catch (IOException e) {
+            System.out.println("[!] An exception was thrown while accepting a connection");
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+            }
+            return null;
+        }
+    }
+}
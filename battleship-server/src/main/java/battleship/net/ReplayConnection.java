@@ -0,0 +1,109 @@
+package battleship.net;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connection of a player that can change during the game: a player that lost its socket is detached,
+ * and attached again to the new socket it reconnects with.
+ * <p>
+ * The messages sent since the player last spoke are kept, and replayed to the new socket when it's attached:
+ * they're the ones the player may have missed. They're few, since the game waits for the player after every step.
+ * <p>
+ * Not thread safe, the game uses it under its lock.
+ */
+public class ReplayConnection implements Connection {
+    private Connection connection;
+    /**
+     * Messages sent since the last call to acknowledge()
+     */
+    private final List<String> unacknowledged;
+
+    /**
+     * @param connection The first connection of the player
+     * @throws IllegalArgumentException If connection is null
+     */
+    public ReplayConnection(Connection connection) throws IllegalArgumentException {
+        if (connection == null) {
+            throw new IllegalArgumentException("connection is null");
+        }
+
+        this.connection = connection;
+        this.unacknowledged = new ArrayList<>();
+    }
+
+    /**
+     * The player answered, so it received the messages sent before. They won't be replayed
+     */
+    public void acknowledge() {
+        unacknowledged.clear();
+    }
+
+    /**
+     * Keeps the following messages without sending them, until a new connection is attached
+     */
+    public void detach() {
+        connection = DetachedConnection.INSTANCE;
+    }
+
+    /**
+     * Replaces the connection and queues to it the messages not acknowledged. They're sent with the next flush
+     *
+     * @param connection The new connection of the player
+     * @throws IllegalArgumentException If connection is null
+     */
+    public void attach(Connection connection) throws IllegalArgumentException {
+        if (connection == null) {
+            throw new IllegalArgumentException("connection is null");
+        }
+
+        this.connection = connection;
+        for (String msg : unacknowledged) {
+            connection.queue(msg);
+        }
+    }
+
+    /**
+     * @return The current connection, DetachedConnection.INSTANCE while detached
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public void println(String msg) throws IllegalArgumentException {
+        queue(msg);
+        flush();
+    }
+
+    @Override
+    public void queue(String msg) throws IllegalArgumentException {
+        connection.queue(msg);
+        unacknowledged.add(msg);
+    }
+
+    @Override
+    public void flush() {
+        connection.flush();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return connection.isClosed();
+    }
+
+    @Override
+    public void disconnect() {
+        connection.disconnect();
+    }
+
+    @Override
+    public long getLastBeat() {
+        return connection.getLastBeat();
+    }
+
+    @Override
+    public String getSocketInfo() {
+        return connection.getSocketInfo();
+    }
+}
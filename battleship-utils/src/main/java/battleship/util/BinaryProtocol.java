@@ -0,0 +1,418 @@
+package battleship.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary framing of the text protocol.
+ * <p>
+ * A client opts in sending MAGIC as the first byte of the connection, then both sides exchange frames made of
+ * a one-byte opcode followed by a payload whose size depends only on the opcode:
+ * - nothing for the messages without arguments (PING, GRID_OK, TURN_START, ...)
+ * - one byte with the cell of SHOOT_XXYY, HIT_XXYY and OCEAN_XXYY
+ * - a 13-byte mask of the 100 cells for the grid, SANK_... and LOST_...
+ * - the 8-byte session token of SESSION_... and RESUME_..., that are written in text as 16 hex digits
+ * <p>
+ * The cell "AABB" has index (AA-1)*10 + (BB-1), and is bit index%8 of byte index/8 in the masks.
+ * Frames are translated from and to the text messages, so the game logic is the same for both protocols.
+ */
+public final class BinaryProtocol {
+    /**
+     * First byte sent by a binary client. It can't be the first byte of a text message, that is ASCII
+     */
+    public static final byte MAGIC = (byte) 0xB5;
+
+    public static final byte PING = 0x01;
+    public static final byte SHOOT = 0x02;
+    public static final byte GRID = 0x03;
+    public static final byte RESUME = 0x04;
+    public static final byte HIT_AT = 0x20;
+    public static final byte OCEAN_AT = 0x21;
+    public static final byte SANK = 0x22;
+    public static final byte LOST = 0x23;
+    public static final byte SESSION = 0x24;
+
+    private static final int GRID_SIZE = 10;
+    private static final int NUM_CELLS = GRID_SIZE * GRID_SIZE;
+    private static final int MASK_BYTES = (NUM_CELLS + 7) / 8;
+    private static final int TOKEN_BYTES = 8;
+    /**
+     * Longest frame: opcode and mask
+     */
+    public static final int MAX_FRAME_LENGTH = 1 + MASK_BYTES;
+
+    /**
+     * Messages without arguments, the opcode of WORDS[i] is i + 0x10
+     */
+    private static final String[] WORDS = {"OPPONENT_WAIT", "OPPONENT_FOUND", "SEND_GRID", "GRID_OK", "GRID_ERR", "GAME_START",
+            "TURN_START", "TURN_END", "HIT", "OCEAN", "DUPLICATE", "INVALID", "WIN", "WIN_OPPONENT_DC",
+            "RESUME_OK", "RESUME_ERR"};
+    private static final int WORDS_OPCODE = 0x10;
+    private static final Map<String, Byte> OPCODES = new HashMap<>();
+    private static final String[] SHOOT_AT = new String[NUM_CELLS];
+    private static final String[] HIT_AT_TEXT = new String[NUM_CELLS];
+    private static final String[] OCEAN_AT_TEXT = new String[NUM_CELLS];
+
+    static {
+        OPCODES.put("PING", PING);
+        for (int i = 0; i < WORDS.length; i++) {
+            OPCODES.put(WORDS[i], (byte) (WORDS_OPCODE + i));
+        }
+        for (int cell = 0; cell < NUM_CELLS; cell++) {
+            SHOOT_AT[cell] = ("SHOOT_" + coordinates(cell)).intern();
+            HIT_AT_TEXT[cell] = ("HIT_" + coordinates(cell)).intern();
+            OCEAN_AT_TEXT[cell] = ("OCEAN_" + coordinates(cell)).intern();
+        }
+    }
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * @return All the text messages without variable parts: the words and the messages with one cell
+     */
+    static List<String> textMessages() {
+        List<String> messages = new ArrayList<>(OPCODES.keySet());
+        messages.addAll(Arrays.asList(SHOOT_AT));
+        messages.addAll(Arrays.asList(HIT_AT_TEXT));
+        messages.addAll(Arrays.asList(OCEAN_AT_TEXT));
+        return messages;
+    }
+
+    /**
+     * @param opcode The first byte of a frame
+     * @return Number of bytes that follow the opcode
+     * @throws IllegalArgumentException If the opcode is unknown
+     */
+    public static int payloadLength(byte opcode) throws IllegalArgumentException {
+        switch (opcode) {
+            case PING:
+                return 0;
+            case SHOOT:
+            case HIT_AT:
+            case OCEAN_AT:
+                return 1;
+            case GRID:
+            case SANK:
+            case LOST:
+                return MASK_BYTES;
+            case RESUME:
+            case SESSION:
+                return TOKEN_BYTES;
+            default:
+                if (opcode >= WORDS_OPCODE && opcode < WORDS_OPCODE + WORDS.length)
+                    return 0;
+                throw new IllegalArgumentException("Unknown opcode " + opcode);
+        }
+    }
+
+    /**
+     * Encodes a text message in a frame. Nothing is written if the message is invalid
+     *
+     * @param msg The text message
+     * @param out Buffer with at least MAX_FRAME_LENGTH bytes remaining
+     * @throws IllegalArgumentException If the message isn't part of the protocol
+     */
+    public static void encode(String msg, ByteBuffer out) throws IllegalArgumentException {
+        Byte opcode = OPCODES.get(msg);
+        if (opcode != null) {
+            out.put(opcode);
+        } else if (msg.startsWith("SHOOT_") && msg.length() == 10) {
+            int cell = cell(msg, 6);
+            out.put(SHOOT).put((byte) cell);
+        } else if (msg.startsWith("HIT_") && msg.length() == 8) {
+            int cell = cell(msg, 4);
+            out.put(HIT_AT).put((byte) cell);
+        } else if (msg.startsWith("OCEAN_") && msg.length() == 10) {
+            int cell = cell(msg, 6);
+            out.put(OCEAN_AT).put((byte) cell);
+        } else if (msg.startsWith("SANK_")) {
+            putMask(SANK, cellsMask(msg, 5), out);
+        } else if (msg.startsWith("LOST_")) {
+            putMask(LOST, cellsMask(msg, 5), out);
+        } else if (msg.startsWith("SESSION_")) {
+            out.put(SESSION).putLong(parseToken(msg, 8));
+        } else if (msg.startsWith("RESUME_")) {
+            out.put(RESUME).putLong(parseToken(msg, 7));
+        } else {
+            putMask(GRID, gridMask(msg), out);
+        }
+    }
+
+    /**
+     * Decodes the next frame of the buffer, if it's complete
+     *
+     * @param in Buffer in read mode. Its position is moved after the frame only if it's complete
+     * @return The text message, or null if the frame isn't complete
+     * @throws IllegalArgumentException If the opcode is unknown
+     */
+    public static String decode(ByteBuffer in) throws IllegalArgumentException {
+        if (!in.hasRemaining())
+            return null;
+
+        byte opcode = in.get(in.position());
+        if (in.remaining() < 1 + payloadLength(opcode))
+            return null;
+
+        in.get();
+        switch (opcode) {
+            case PING:
+                return "PING";
+            case SHOOT:
+                // cells outside the grid become a shot the game rejects
+                int cell = in.get() & 0xFF;
+                return cell < NUM_CELLS ? SHOOT_AT[cell] : "SHOOT";
+            case HIT_AT:
+                return HIT_AT_TEXT[(in.get() & 0xFF) % NUM_CELLS];
+            case OCEAN_AT:
+                return OCEAN_AT_TEXT[(in.get() & 0xFF) % NUM_CELLS];
+            case GRID:
+                return gridOf(getMask(in));
+            case SANK:
+                return "SANK_" + cellsOf(getMask(in));
+            case LOST:
+                return "LOST_" + cellsOf(getMask(in));
+            case SESSION:
+                return "SESSION_" + formatToken(in.getLong());
+            case RESUME:
+                return "RESUME_" + formatToken(in.getLong());
+            default:
+                return WORDS[opcode - WORDS_OPCODE];
+        }
+    }
+
+    /**
+     * Writes a text message as a frame
+     *
+     * @param msg The text message
+     * @param out The output stream
+     * @throws IOException              If the stream couldn't be written
+     * @throws IllegalArgumentException If the message isn't part of the protocol
+     */
+    public static void write(String msg, OutputStream out) throws IOException, IllegalArgumentException {
+        ByteBuffer frame = ByteBuffer.allocate(MAX_FRAME_LENGTH);
+        encode(msg, frame);
+        out.write(frame.array(), 0, frame.position());
+    }
+
+    /**
+     * Waits for the next frame on the stream
+     *
+     * @param in The input stream
+     * @return The text message, or null if the stream ended
+     * @throws IOException If the stream couldn't be read, ended in the middle of a frame or has an unknown opcode
+     */
+    public static String read(InputStream in) throws IOException {
+        int opcode = in.read();
+        if (opcode < 0)
+            return null;
+
+        byte[] frame = new byte[MAX_FRAME_LENGTH];
+        frame[0] = (byte) opcode;
+        int length;
+        try {
+            length = 1 + payloadLength(frame[0]);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        for (int n = 1; n < length; ) {
+            int read = in.read(frame, n, length - n);
+            if (read < 0)
+                throw new EOFException("Stream ended in the middle of a frame");
+            n += read;
+        }
+        return decode(ByteBuffer.wrap(frame, 0, length));
+    }
+
+    /**
+     * @return The index of the "AABB" cell at offset
+     * @throws IllegalArgumentException If the coordinates are invalid
+     */
+    private static int cell(String msg, int offset) throws IllegalArgumentException {
+        if (msg.length() < offset + 4)
+            throw new IllegalArgumentException("Invalid cell in " + msg);
+
+        int a = twoDigits(msg, offset), b = twoDigits(msg, offset + 2);
+        if (a < 1 || a > GRID_SIZE || b < 1 || b > GRID_SIZE)
+            throw new IllegalArgumentException("Invalid cell in " + msg);
+
+        return (a - 1) * GRID_SIZE + (b - 1);
+    }
+
+    private static int twoDigits(String s, int index) {
+        int d1 = s.charAt(index) - '0', d0 = s.charAt(index + 1) - '0';
+        return (d1 < 0 || d1 > 9 || d0 < 0 || d0 > 9) ? -1 : d1 * 10 + d0;
+    }
+
+    /**
+     * @return The 16 hex digits of a session token
+     */
+    public static String formatToken(long token) {
+        return String.format("%016X", token);
+    }
+
+    /**
+     * @param msg    The message
+     * @param offset Index of the first hex digit
+     * @return The session token in the message
+     * @throws IllegalArgumentException If there aren't 16 hex digits at offset
+     */
+    public static long parseToken(String msg, int offset) throws IllegalArgumentException {
+        if (msg.length() != offset + 16)
+            throw new IllegalArgumentException("Invalid token in " + msg);
+
+        try {
+            return Long.parseUnsignedLong(msg.substring(offset), 16);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid token in " + msg);
+        }
+    }
+
+    /**
+     * @return The "AABB" coordinates of the cell
+     */
+    private static String coordinates(int cell) {
+        return String.format("%02d%02d", cell / GRID_SIZE + 1, cell % GRID_SIZE + 1);
+    }
+
+    /**
+     * @return The mask of the "AABB" cells joined by '_', starting from offset
+     */
+    private static long[] cellsMask(String msg, int offset) {
+        long[] mask = new long[2];
+        for (int i = offset; i < msg.length(); i += 5) {
+            set(mask, cell(msg, i));
+        }
+        return mask;
+    }
+
+    /**
+     * @return The mask of all the cells of the "XXYYHLL" ships joined by '_'
+     */
+    private static long[] gridMask(String grid) {
+        long[] mask = new long[2];
+        for (int i = 0; i < grid.length(); i += 8) {
+            if (grid.length() < i + 7)
+                throw new IllegalArgumentException("Invalid ship in " + grid);
+
+            int cell = cell(grid, i);
+            char orientation = grid.charAt(i + 4);
+            int length = twoDigits(grid, i + 5);
+            if ((orientation != 'H' && orientation != 'V') || length < 1)
+                throw new IllegalArgumentException("Invalid ship in " + grid);
+
+            for (int j = 0; j < length; j++) {
+                // H ships extend the column (XX), V ships the row (YY)
+                int shipCell = orientation == 'H' ? cell + j * GRID_SIZE : cell + j;
+                if (shipCell >= NUM_CELLS || (orientation == 'V' && shipCell / GRID_SIZE != cell / GRID_SIZE))
+                    throw new IllegalArgumentException("Ship outside the grid in " + grid);
+
+                set(mask, shipCell);
+            }
+        }
+        return mask;
+    }
+
+    private static void set(long[] mask, int cell) {
+        mask[cell >>> 6] |= 1L << (cell & 63);
+    }
+
+    /**
+     * Puts the opcode and the 13 bytes of the mask
+     */
+    private static void putMask(byte opcode, long[] mask, ByteBuffer out) {
+        out.put(opcode);
+        for (int i = 0; i < MASK_BYTES; i++) {
+            out.put((byte) (mask[i / 8] >>> ((i % 8) * 8)));
+        }
+    }
+
+    /**
+     * @return The mask of 100 cells read from the buffer
+     */
+    private static boolean[] getMask(ByteBuffer in) {
+        boolean[] cells = new boolean[NUM_CELLS];
+        for (int i = 0; i < MASK_BYTES; i++) {
+            int b = in.get() & 0xFF;
+            for (int bit = 0; bit < 8 && i * 8 + bit < NUM_CELLS; bit++) {
+                cells[i * 8 + bit] = (b & (1 << bit)) != 0;
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @return The "AABB" coordinates of the cells in the mask, joined by '_'
+     */
+    private static String cellsOf(boolean[] cells) {
+        StringBuilder sb = new StringBuilder();
+        for (int cell = 0; cell < NUM_CELLS; cell++) {
+            if (cells[cell]) {
+                if (sb.length() > 0) sb.append('_');
+                sb.append(coordinates(cell));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Rebuilds the "XXYYHLL" ships of a grid mask.
+     * Ships can't touch, so every group of adjacent cells is a ship. Groups that aren't a line are encoded
+     * with invalid coordinates, so the grid is rejected by the game.
+     *
+     * @return The ships joined by '_'
+     */
+    private static String gridOf(boolean[] cells) {
+        StringBuilder sb = new StringBuilder();
+        int[] stack = new int[NUM_CELLS];
+
+        for (int first = 0; first < NUM_CELLS; first++) {
+            if (!cells[first])
+                continue;
+
+            // flood fill the ship, starting from its first cell
+            int length = 0, top = 0;
+            boolean sameColumn = true, sameRow = true;
+            cells[first] = false;
+            stack[top++] = first;
+            while (top > 0) {
+                int cell = stack[--top];
+                length++;
+                sameColumn &= cell / GRID_SIZE == first / GRID_SIZE;
+                sameRow &= cell % GRID_SIZE == first % GRID_SIZE;
+
+                int[] neighbours = {
+                        cell % GRID_SIZE > 0 ? cell - 1 : -1,
+                        cell % GRID_SIZE < GRID_SIZE - 1 ? cell + 1 : -1,
+                        cell - GRID_SIZE,
+                        cell + GRID_SIZE};
+                for (int n : neighbours) {
+                    if (n >= 0 && n < NUM_CELLS && cells[n]) {
+                        cells[n] = false;
+                        stack[top++] = n;
+                    }
+                }
+            }
+
+            if (sb.length() > 0) sb.append('_');
+            if (sameRow) {
+                sb.append(coordinates(first)).append('H');
+            } else if (sameColumn) {
+                sb.append(coordinates(first)).append('V');
+            } else {
+                sb.append("0000H");
+            }
+            sb.append(String.format("%02d", length));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,162 @@
+package battleship.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates random valid fleets: 7 ships (2x1, 2x2, 1x3, 1x4, 1x5) that don't overlap and aren't adjacent.
+ * <p>
+ * Every valid fleet has the same odds. The ships are drawn by pairs, from the longest one: each pair is one of
+ * the pairs that don't touch each other, at random, from tables built once when the class is loaded, then the last
+ * ship alone. As soon as a pair touches the ships drawn before it, the whole fleet is drawn again.
+ * Keeping the ships drawn and drawing again only the last pair would be faster, but the fleets where the first
+ * ships leave little room would come out more often.
+ * <p>
+ * A fleet takes about 55 draws, most of them stop at the second pair after two random numbers and a mask check.
+ */
+public final class FleetGenerator {
+    /**
+     * Length of every ship, from the longest one
+     */
+    private static final int[] LENGTHS = {5, 4, 3, 2, 2, 1, 1};
+    public static final int NUM_SHIPS = LENGTHS.length;
+    /**
+     * Ships 2*p and 2*p + 1 form the pair p, the last ship is drawn alone
+     */
+    private static final int PAIRS = NUM_SHIPS / 2;
+
+    /**
+     * Placements of the ships of every pair that don't touch each other, and the masks of their cells and halos:
+     * cells lo, cells hi, halo lo and halo hi of the pair k are at 4*k. They're next to each other since the tables
+     * don't fit in the CPU caches, and most draws read only them
+     */
+    private static final int[][] FIRST, SECOND;
+    private static final long[][] MASKS;
+
+    static {
+        // built by another class, as Placements
+        Builder builder = new Builder();
+        FIRST = builder.first;
+        SECOND = builder.second;
+        MASKS = builder.masks;
+    }
+
+    private FleetGenerator() {
+    }
+
+    /**
+     * @param ship Index of the ship, from 0 to NUM_SHIPS - 1
+     * @return Its length, the ships are sorted from the longest one
+     */
+    public static int length(int ship) {
+        return LENGTHS[ship];
+    }
+
+    /**
+     * @param random     Source of randomness
+     * @param placements Filled with the placement of every ship, see length(int) and Placements
+     * @throws IllegalArgumentException If placements has less than NUM_SHIPS elements
+     */
+    public static void next(Random random, int[] placements) throws IllegalArgumentException {
+        if (placements.length < NUM_SHIPS) {
+            throw new IllegalArgumentException("placements has less than " + NUM_SHIPS + " elements");
+        }
+
+        while (!tryNext(random, placements)) {
+        }
+    }
+
+    /**
+     * @param random Source of randomness
+     * @return All the 7 ships in the "XXYYHLL" format, joined by '_'
+     */
+    public static String nextGrid(Random random) {
+        int[] placements = new int[NUM_SHIPS];
+        next(random, placements);
+
+        StringBuilder grid = new StringBuilder(NUM_SHIPS * 8);
+        for (int s = 0; s < NUM_SHIPS; s++) {
+            if (s > 0)
+                grid.append('_');
+            grid.append(Placements.format(LENGTHS[s], placements[s]));
+        }
+        return grid.toString();
+    }
+
+    /**
+     * @return false if a ship touched the ones drawn before it
+     */
+    private static boolean tryNext(Random random, int[] placements) {
+        // halos of the ships drawn
+        long usedLo = 0, usedHi = 0;
+
+        for (int p = 0; p < PAIRS; p++) {
+            long[] masks = MASKS[p];
+            int k = random.nextInt(FIRST[p].length);
+            if (((masks[4 * k] & usedLo) | (masks[4 * k + 1] & usedHi)) != 0)
+                return false;
+
+            placements[2 * p] = FIRST[p][k];
+            placements[2 * p + 1] = SECOND[p][k];
+            usedLo |= masks[4 * k + 2];
+            usedHi |= masks[4 * k + 3];
+        }
+
+        int length = LENGTHS[NUM_SHIPS - 1];
+        int i = random.nextInt(Placements.count(length));
+        if (((Placements.lo(length, i) & usedLo) | (Placements.hi(length, i) & usedHi)) != 0)
+            return false;
+
+        placements[NUM_SHIPS - 1] = i;
+        return true;
+    }
+
+    private static final class Builder {
+        private final int[][] first = new int[PAIRS][], second = new int[PAIRS][];
+        private final long[][] masks = new long[PAIRS][];
+
+        Builder() {
+            for (int p = 0; p < PAIRS; p++) {
+                long[][] a = masks(LENGTHS[2 * p]), b = masks(LENGTHS[2 * p + 1]);
+                int max = a[0].length * b[0].length;
+                first[p] = new int[max];
+                second[p] = new int[max];
+                masks[p] = new long[4 * max];
+
+                int n = 0;
+                for (int i = 0; i < a[0].length; i++) {
+                    for (int j = 0; j < b[0].length; j++) {
+                        // the second ship touches the first one
+                        if (((b[0][j] & a[2][i]) | (b[1][j] & a[3][i])) != 0)
+                            continue;
+
+                        first[p][n] = i;
+                        second[p][n] = j;
+                        for (int m = 0; m < 4; m++) {
+                            masks[p][4 * n + m] = a[m][i] | b[m][j];
+                        }
+                        n++;
+                    }
+                }
+
+                first[p] = Arrays.copyOf(first[p], n);
+                second[p] = Arrays.copyOf(second[p], n);
+                masks[p] = Arrays.copyOf(masks[p], 4 * n);
+            }
+        }
+
+        /**
+         * @return The cells lo, cells hi, halo lo and halo hi masks of all the placements of the length
+         */
+        private static long[][] masks(int length) {
+            long[][] masks = new long[4][Placements.count(length)];
+            for (int i = 0; i < masks[0].length; i++) {
+                masks[0][i] = Placements.lo(length, i);
+                masks[1][i] = Placements.hi(length, i);
+                masks[2][i] = Placements.haloLo(length, i);
+                masks[3][i] = Placements.haloHi(length, i);
+            }
+            return masks;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package battleship.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits an input stream in lines terminated by '\n' (or "\r\n"), reading it in a reusable buffer.
+ * <p>
+ * nextLine() returns a view over the buffer without copying it. readLine() returns the shared String constant
+ * of the protocol messages without variable parts (PING, TURN_START, SHOOT_XXYY, HIT_XXYY, ...),
+ * so only grids, SANK_... and LOST_... are allocated.
+ * <p>
+ * Not thread-safe: it must be used by a single reader.
+ */
+public class LineReader {
+    private static final int DEFAULT_MAX_LINE_LENGTH = 1024;
+
+    /**
+     * Open addressing table of the protocol messages, by the hash of their bytes
+     */
+    private static final String[] MESSAGES = new String[1024];
+
+    static {
+        for (String msg : BinaryProtocol.textMessages()) {
+            // same hash as toMessage() for ASCII strings
+            int i = index(msg.hashCode());
+            while (MESSAGES[i] != null) {
+                i = (i + 1) & (MESSAGES.length - 1);
+            }
+            MESSAGES[i] = msg;
+        }
+    }
+
+    private final InputStream in;
+    /**
+     * Bytes read and not returned yet, in read mode
+     */
+    private final ByteBuffer buffer;
+    private final Line line;
+
+    /**
+     * @param in The input stream
+     * @throws IllegalArgumentException If in is null
+     */
+    public LineReader(InputStream in) throws IllegalArgumentException {
+        this(in, DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * @param in            The input stream
+     * @param maxLineLength Longest line accepted, in bytes
+     * @throws IllegalArgumentException If in is null or maxLineLength is less or equal to zero
+     */
+    public LineReader(InputStream in, int maxLineLength) throws IllegalArgumentException {
+        if (in == null) {
+            throw new IllegalArgumentException("Input stream is null");
+        }
+        if (maxLineLength <= 0) {
+            throw new IllegalArgumentException("maxLineLength is less or equal to zero");
+        }
+
+        this.in = in;
+        this.buffer = ByteBuffer.allocate(maxLineLength);
+        this.buffer.flip();
+        this.line = new Line();
+    }
+
+    /**
+     * Waits for the next line
+     *
+     * @return The line without terminator, or null if the stream ended.
+     * It's a view over the internal buffer, valid only until the next call
+     * @throws IOException If the stream couldn't be read or the line is longer than maxLineLength
+     */
+    public CharSequence nextLine() throws IOException {
+        int start = buffer.position();
+        int scanned = start;
+
+        while (true) {
+            for (int i = scanned; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    int end = (i > start && buffer.get(i - 1) == '\r') ? i - 1 : i;
+                    buffer.position(i + 1);
+                    return line.set(start, end);
+                }
+            }
+
+            // move the partial line at the start of the buffer and read more
+            scanned = buffer.limit() - start;
+            buffer.compact();
+            if (!buffer.hasRemaining())
+                throw new IOException("Line longer than " + buffer.capacity() + " bytes");
+
+            int read = in.read(buffer.array(), buffer.position(), buffer.remaining());
+            if (read > 0)
+                buffer.position(buffer.position() + read);
+            buffer.flip();
+            start = 0;
+
+            if (read < 0) {
+                if (!buffer.hasRemaining())
+                    return null;
+
+                // last line without terminator
+                buffer.position(buffer.limit());
+                return line.set(0, buffer.limit());
+            }
+        }
+    }
+
+    /**
+     * Waits for the next line
+     *
+     * @return The line without terminator, or null if the stream ended
+     * @throws IOException If the stream couldn't be read or the line is longer than maxLineLength
+     */
+    public String readLine() throws IOException {
+        return nextLine() == null ? null : toMessage(buffer.array(), line.start, line.end);
+    }
+
+    /**
+     * Decodes an ASCII message
+     *
+     * @param bytes The bytes
+     * @param start Index of the first byte
+     * @param end   Index after the last byte
+     * @return The shared constant if it's a protocol message without variable parts, a new String otherwise
+     */
+    public static String toMessage(byte[] bytes, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + bytes[i];
+        }
+
+        for (int i = index(h); MESSAGES[i] != null; i = (i + 1) & (MESSAGES.length - 1)) {
+            if (equals(MESSAGES[i], bytes, start, end))
+                return MESSAGES[i];
+        }
+        return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+    }
+
+    private static boolean equals(String msg, byte[] bytes, int start, int end) {
+        if (msg.length() != end - start)
+            return false;
+
+        for (int i = 0; i < msg.length(); i++) {
+            if (msg.charAt(i) != bytes[start + i])
+                return false;
+        }
+        return true;
+    }
+
+    private static int index(int hash) {
+        return (hash ^ (hash >>> 16)) & (MESSAGES.length - 1);
+    }
+
+    /**
+     * ASCII view over a range of the buffer
+     */
+    private class Line implements CharSequence {
+        private int start, end;
+
+        private Line set(int start, int end) {
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return toMessage(buffer.array(), start, end);
+        }
+    }
+}
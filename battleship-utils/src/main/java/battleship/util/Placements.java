@@ -0,0 +1,200 @@
+package battleship.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Every position a ship can take on the 10x10 grid, built once when the class is loaded and shared by all the games.
+ * <p>
+ * Cells are indexed as in the protocol: the cell "AABB" has index (AA-1)*10 + (BB-1), and a mask of cells is
+ * a 128-bit bitboard split in two longs (lo: cells 0-63, hi: cells 64-99).
+ * A placement of length L is a line of L cells, along BB (step 1) or along AA (step GRID_SIZE). Its halo is the
+ * placement plus all the cells around it, diagonals included: no other ship can be there.
+ * Ships of length 1 have a single placement for each cell, indexed by the cell.
+ * <p>
+ * The placements of a length are numbered from 0 to count(length) - 1. The getters don't check their arguments.
+ */
+public final class Placements {
+    public static final int GRID_SIZE = 10;
+    public static final int NUM_CELLS = GRID_SIZE * GRID_SIZE;
+    public static final int MAX_LENGTH = 5;
+
+    /**
+     * Masks of the placements, by ship length
+     */
+    private static final long[][] LO, HI, HALO_LO, HALO_HI;
+    /**
+     * Placement by length, direction (0: step 1, 1: step GRID_SIZE) and first cell, -1 if the ship doesn't fit
+     */
+    private static final int[][][] INDEX;
+    /**
+     * "XXYYHLL" ship of the grid messages, and "AABB" squares of the placements
+     */
+    private static final String[][] SHIPS;
+    private static final List<List<List<String>>> SQUARES;
+    private static final long INIT_NANOS;
+
+    static {
+        // built by another class: the static fields and methods of a class being initialized are slow to access
+        long start = System.nanoTime();
+        Builder builder = new Builder();
+        LO = builder.lo;
+        HI = builder.hi;
+        HALO_LO = builder.haloLo;
+        HALO_HI = builder.haloHi;
+        INDEX = builder.index;
+        SHIPS = builder.ships;
+        SQUARES = builder.squares;
+        INIT_NANOS = System.nanoTime() - start;
+    }
+
+    private Placements() {
+    }
+
+    /**
+     * @return Number of placements of a ship of the length
+     */
+    public static int count(int length) {
+        return LO[length].length;
+    }
+
+    /**
+     * Finds the placement of a ship of the grid
+     *
+     * @param length   Length of the ship
+     * @param first    Cell of the first square of the ship
+     * @param vertical True for a V ship, false for an H one
+     * @return The index of the placement, or -1 if the length is not valid or the ship goes outside the grid
+     */
+    public static int indexOf(int length, int first, boolean vertical) {
+        if (length < 1 || length > MAX_LENGTH || first < 0 || first >= NUM_CELLS)
+            return -1;
+        return INDEX[length][vertical ? 1 : 0][first];
+    }
+
+    public static long lo(int length, int i) {
+        return LO[length][i];
+    }
+
+    public static long hi(int length, int i) {
+        return HI[length][i];
+    }
+
+    public static long haloLo(int length, int i) {
+        return HALO_LO[length][i];
+    }
+
+    public static long haloHi(int length, int i) {
+        return HALO_HI[length][i];
+    }
+
+    /**
+     * @return The ship in the "XXYYHLL" format of the grid messages
+     */
+    public static String format(int length, int i) {
+        return SHIPS[length][i];
+    }
+
+    /**
+     * @return The "AABB" squares of the placement, from the first one. The list is shared and can't be modified
+     */
+    public static List<String> squares(int length, int i) {
+        return SQUARES.get(length).get(i);
+    }
+
+    /**
+     * @return Nanoseconds spent building the tables when the class was loaded
+     */
+    public static long getInitNanos() {
+        return INIT_NANOS;
+    }
+
+    private static final class Builder {
+        private final long[][] lo = new long[MAX_LENGTH + 1][], hi = new long[MAX_LENGTH + 1][];
+        private final long[][] haloLo = new long[MAX_LENGTH + 1][], haloHi = new long[MAX_LENGTH + 1][];
+        private final int[][][] index = new int[MAX_LENGTH + 1][2][NUM_CELLS];
+        private final String[][] ships = new String[MAX_LENGTH + 1][];
+        private final List<List<List<String>>> squares = new ArrayList<>();
+        private final String[] coordinates = new String[NUM_CELLS];
+
+        Builder() {
+            squares.add(Collections.emptyList());
+            for (int cell = 0; cell < NUM_CELLS; cell++) {
+                coordinates[cell] = new String(new char[]{digit(cell / GRID_SIZE + 1, 10), digit(cell / GRID_SIZE + 1, 1),
+                        digit(cell % GRID_SIZE + 1, 10), digit(cell % GRID_SIZE + 1, 1)});
+            }
+
+            for (int length = 1; length <= MAX_LENGTH; length++) {
+                int count = length == 1 ? NUM_CELLS : 2 * GRID_SIZE * (GRID_SIZE - length + 1);
+                lo[length] = new long[count];
+                hi[length] = new long[count];
+                haloLo[length] = new long[count];
+                haloHi[length] = new long[count];
+                ships[length] = new String[count];
+                squares.add(new ArrayList<>(count));
+                Arrays.fill(index[length][0], -1);
+                Arrays.fill(index[length][1], -1);
+
+                int i = 0;
+                for (int step : length == 1 ? new int[]{1} : new int[]{1, GRID_SIZE}) {
+                    for (int cell = 0; cell < NUM_CELLS; cell++) {
+                        // the last cell must be on the grid, and on the same line for step 1
+                        int last = cell + (length - 1) * step;
+                        if (last >= NUM_CELLS || (step == 1 && last / GRID_SIZE != cell / GRID_SIZE))
+                            continue;
+
+                        add(length, i++, cell, last, step);
+                    }
+                }
+                // a ship of length 1 is both H and V
+                if (length == 1)
+                    index[1][1] = index[1][0];
+            }
+        }
+
+        private void add(int length, int i, int first, int last, int step) {
+            index[length][step == 1 ? 0 : 1][first] = i;
+            List<String> shipSquares = new ArrayList<>(length);
+            for (int c = first; c <= last; c += step) {
+                lo[length][i] |= c < 64 ? 1L << c : 0;
+                hi[length][i] |= c < 64 ? 0 : 1L << (c - 64);
+                // the halos of length 1 are built first, one for each cell
+                if (length == 1)
+                    addHalo(c);
+                haloLo[length][i] |= haloLo[1][c];
+                haloHi[length][i] |= haloHi[1][c];
+                shipSquares.add(coordinates[c]);
+            }
+            // a grid ship is "column row", the cell index is "row column": H ships go along BB
+            ships[length][i] = new String(new char[]{digit(first % GRID_SIZE + 1, 10), digit(first % GRID_SIZE + 1, 1),
+                    digit(first / GRID_SIZE + 1, 10), digit(first / GRID_SIZE + 1, 1), step == 1 ? 'H' : 'V',
+                    digit(length, 10), digit(length, 1)});
+            squares.get(length).add(Collections.unmodifiableList(shipSquares));
+        }
+
+        /**
+         * Sets the halo of the placement of length 1 of the cell: the cell and its neighbours
+         */
+        private void addHalo(int cell) {
+            int x = cell / GRID_SIZE, y = cell % GRID_SIZE;
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(GRID_SIZE - 1, x + 1); nx++) {
+                for (int ny = Math.max(0, y - 1); ny <= Math.min(GRID_SIZE - 1, y + 1); ny++) {
+                    int c = nx * GRID_SIZE + ny;
+                    haloLo[1][cell] |= c < 64 ? 1L << c : 0;
+                    haloHi[1][cell] |= c < 64 ? 0 : 1L << (c - 64);
+                }
+            }
+        }
+
+        /**
+         * The strings are built from their digits, String.format would be most of the startup cost
+         *
+         * @return The digit of n of the unit, 10 or 1
+         */
+        private static char digit(int n, int unit) {
+            return (char) ('0' + n / unit % 10);
+        }
+    }
+}
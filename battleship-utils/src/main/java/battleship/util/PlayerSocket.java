@@ -1,53 +1,239 @@
 package battleship.util;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Class that initializes in & out streams given a socket
+ * <p>
+ * Messages are exchanged with the text protocol, or with the binary one (see BinaryProtocol) if the client opts in.
+ * println(), queue(), flush() and nextMessage() work with both, getOut() only with the text protocol.
+ * Text messages are read by a LineReader, so the protocol messages don't allocate a new String.
+ * <p>
+ * queue() buffers the messages until flush(), so that all the messages of a game step are sent with one write.
+ * TCP_NODELAY is enabled, since flush() is called only when a batch is complete.
+ * The output is guarded by a ReentrantLock rather than a monitor: a virtual thread blocked in a socket write
+ * while holding a monitor would pin its carrier thread.
  */
 public class PlayerSocket {
-    private Scanner in;
+    private LineReader in;
     private PrintWriter out;
     private Socket socket;
+    private InputStream input;
+    private OutputStream output;
+    /**
+     * False while the server is waiting for the first byte of the client. Guarded by outLock
+     */
+    private boolean isHandshakeDone;
+    private volatile boolean isBinary;
+    /**
+     * Messages printed before the handshake. Guarded by outLock
+     */
+    private List<String> pendingOut;
+    private final ReentrantLock outLock = new ReentrantLock();
 
     /**
-     * Initialize in & out streams. Out stream has autoFlush
+     * Initialize in & out streams of the text protocol. Out stream has autoFlush
      * @param socket Target socket
      * @throws IOException If something went wrong while retrieving in, out streams from socket
      * @throws IllegalArgumentException If socket is null
      */
     public PlayerSocket(Socket socket) throws IOException, IllegalArgumentException {
+        this(socket, false);
+    }
+
+    /**
+     * Initialize in & out streams. Out stream has autoFlush on println.
+     * With the binary protocol, the handshake is sent to the server.
+     * @param socket Target socket
+     * @param binary Use the binary protocol
+     * @throws IOException If something went wrong while retrieving in, out streams from socket
+     * @throws IllegalArgumentException If socket is null
+     */
+    public PlayerSocket(Socket socket, boolean binary) throws IOException, IllegalArgumentException {
         if (socket == null)
             throw new IllegalArgumentException("Socket is null");
 
         this.socket = socket;
-        this.in = new Scanner(socket.getInputStream());
-        this.out = new PrintWriter(socket.getOutputStream(), true);
+        socket.setTcpNoDelay(true);
+        // LineReader reads only when asked, so the first byte can still be inspected by acceptHandshake()
+        this.input = new BufferedInputStream(socket.getInputStream());
+        this.output = new BufferedOutputStream(socket.getOutputStream());
+        this.in = new LineReader(input);
+        this.out = new PrintWriter(output, true);
+        this.isBinary = binary;
+        this.isHandshakeDone = true;
+
+        if (binary) {
+            output.write(BinaryProtocol.MAGIC);
+            output.flush();
+        }
     }
 
-    public Scanner getIn() {
-        return in;
+    /**
+     * Server side socket. The protocol is chosen by the first byte sent by the client in acceptHandshake(),
+     * messages printed before are sent after it
+     * @param socket Accepted socket
+     * @return The socket
+     * @throws IOException If something went wrong while retrieving in, out streams from socket
+     * @throws IllegalArgumentException If socket is null
+     */
+    public static PlayerSocket accepted(Socket socket) throws IOException, IllegalArgumentException {
+        PlayerSocket playerSocket = new PlayerSocket(socket, false);
+        playerSocket.isHandshakeDone = false;
+        playerSocket.pendingOut = new ArrayList<>();
+        return playerSocket;
     }
 
-    public PrintWriter getOut() {
+    /**
+     * Waits for the first byte sent by the client: the binary protocol is used if it's BinaryProtocol.MAGIC,
+     * otherwise the byte is the start of the first text message.
+     * Does nothing if the protocol is already chosen
+     * @throws IOException If the input stream couldn't be read
+     */
+    public void acceptHandshake() throws IOException {
+        outLock.lock();
+        try {
+            if (isHandshakeDone)
+                return;
+        } finally {
+            outLock.unlock();
+        }
+
+        input.mark(1);
+        boolean binary = input.read() == (BinaryProtocol.MAGIC & 0xFF);
+        if (!binary)
+            input.reset();
+
+        outLock.lock();
+        try {
+            isBinary = binary;
+            isHandshakeDone = true;
+            for (String msg : pendingOut) {
+                write(msg);
+            }
+            pendingOut = null;
+            flushOutput();
+        } finally {
+            outLock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the binary protocol is used
+     */
+    public boolean isBinary() {
+        return isBinary;
+    }
+
+    /**
+     * @return The output stream of the text protocol
+     * @throws IllegalStateException If the binary protocol is used
+     */
+    public PrintWriter getOut() throws IllegalStateException {
+        if (isBinary)
+            throw new IllegalStateException("The binary protocol is used");
         return out;
     }
 
     /**
-     * Print a message in the output stream
+     * Print a message in the output stream and flush it
      *
      * @param msg The message to be printed
-     * @throws IllegalArgumentException If argument is null
+     * @throws IllegalArgumentException If argument is null, or isn't part of the protocol when the binary protocol is used
      */
     public void println(String msg) throws IllegalArgumentException {
+        outLock.lock();
+        try {
+            queue(msg);
+            flush();
+        } finally {
+            outLock.unlock();
+        }
+    }
+
+    /**
+     * Print a message in the output stream without sending it until flush() is called
+     *
+     * @param msg The message to be printed
+     * @throws IllegalArgumentException If argument is null, or isn't part of the protocol when the binary protocol is used
+     */
+    public void queue(String msg) throws IllegalArgumentException {
         if (msg == null) {
             throw new IllegalArgumentException("Message is null");
         }
 
-        out.println(msg);
+        outLock.lock();
+        try {
+            if (!isHandshakeDone)
+                pendingOut.add(msg);
+            else
+                write(msg);
+        } finally {
+            outLock.unlock();
+        }
+    }
+
+    /**
+     * Send all the queued messages
+     */
+    public void flush() {
+        outLock.lock();
+        try {
+            if (isHandshakeDone)
+                flushOutput();
+        } finally {
+            outLock.unlock();
+        }
+    }
+
+    /**
+     * Like PrintWriter, write errors are ignored: a closed socket is noticed by the reader
+     */
+    private void write(String msg) {
+        if (!isBinary) {
+            out.write(msg);
+            out.write('\n');
+            return;
+        }
+
+        try {
+            BinaryProtocol.write(msg, output);
+        } catch (IOException ignore) {
+        }
+    }
+
+    private void flushOutput() {
+        if (!isBinary) {
+            out.flush();
+            return;
+        }
+
+        try {
+            output.flush();
+        } catch (IOException ignore) {
+        }
+    }
+
+    /**
+     * Waits for the next message
+     *
+     * @return The message, or null if the input stream ended
+     * @throws IOException If the input stream couldn't be read, or a binary frame is invalid
+     */
+    public String nextMessage() throws IOException {
+        if (isBinary)
+            return BinaryProtocol.read(input);
+
+        return in.readLine();
     }
 
     public Socket getSocket() {
@@ -61,7 +247,7 @@ public class PlayerSocket {
     @Override
     protected void finalize() throws Throwable {
         try {
-            in.close();
+            input.close();
             out.close();
             socket.close();
         } finally {